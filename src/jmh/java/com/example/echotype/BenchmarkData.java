@@ -0,0 +1,43 @@
+package com.example.echotype;
+
+import java.time.Instant;
+
+final class BenchmarkData {
+
+	private static final String CONTENT = """
+			# Linear Algebra Notes
+
+			## Key Concepts
+			- Vectors: quantities with magnitude and direction, written $\\langle a, b \\rangle$.
+			- Matrices: rectangular arrays of numbers, $\\begin{bmatrix} 1 & 2 \\\\ 3 & 4 \\end{bmatrix}$.
+
+			## Example
+			Solve $2x + 3 = 7$, so $x = 2$.
+			""";
+
+	private BenchmarkData() {
+	}
+
+	static Note note(int i, Instant timestamp) {
+		Note note = new Note();
+		note.setId("note-" + i);
+		note.setTitle("Linear Algebra " + i);
+		note.setContent(CONTENT);
+		note.setUserId(1L);
+		note.setTimestamp(timestamp);
+		note.setIsSynced(true);
+		note.setIsDeleted(false);
+		return note;
+	}
+
+	static Conversation message(int i, Instant timestamp) {
+		Conversation message = new Conversation();
+		message.setConversationId("conversation-" + (i / 50));
+		message.setUserId(1L);
+		message.setMessageText(i % 2 == 0 ? "Explain eigenvalues with an example" : CONTENT);
+		message.setSender(i % 2 == 0 ? "user" : "assistant");
+		message.setTimestamp(timestamp);
+		message.setPinned(false);
+		return message;
+	}
+}
@@ -0,0 +1,65 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing the large note and conversation lists the listing endpoints return, with an
+ * ObjectMapper configured the way Spring Boot configures the application's.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+	@Param({"100", "10000"})
+	private int size;
+
+	private ObjectMapper objectMapper;
+	private List<Note> notes;
+	private List<Conversation> conversations;
+
+	@Setup
+	public void setUp() {
+		objectMapper = new ObjectMapper()
+				.registerModule(new JavaTimeModule())
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		notes = new ArrayList<>(size);
+		conversations = new ArrayList<>(size);
+		Instant start = Instant.parse("2024-05-01T00:00:00Z");
+		for (int i = 0; i < size; i++) {
+			notes.add(BenchmarkData.note(i, start.plusSeconds(i)));
+			conversations.add(BenchmarkData.message(i, start.plusSeconds(i)));
+		}
+	}
+
+	@Benchmark
+	public byte[] notes() throws Exception {
+		return objectMapper.writeValueAsBytes(notes);
+	}
+
+	@Benchmark
+	public byte[] conversations() throws Exception {
+		return objectMapper.writeValueAsBytes(conversations);
+	}
+}
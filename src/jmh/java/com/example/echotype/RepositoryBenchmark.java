@@ -0,0 +1,108 @@
+package com.example.echotype;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository reads and writes against the embedded H2 database of the {@code test} profile.
+ * The conversation benchmarks count messages, so their scores read as messages per second:
+ * one {@code save} per message, as {@code POST /api/conversations} does, against one batched
+ * {@code saveAll}, as {@code POST /api/conversations/batch} does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+	private static final int STORED_NOTES = 5000;
+	private static final int MESSAGES = 100;
+
+	private ConfigurableApplicationContext context;
+	private NoteRepository noteRepository;
+	private ConversationRepository conversationRepository;
+	private int nextNote = STORED_NOTES;
+
+	@Setup
+	public void setUp() {
+		context = new SpringApplicationBuilder(EchotypeApplication.class)
+				.web(WebApplicationType.NONE)
+				.profiles("test")
+				.properties("logging.level.root=WARN")
+				.run();
+		noteRepository = context.getBean(NoteRepository.class);
+		conversationRepository = context.getBean(ConversationRepository.class);
+
+		List<Note> notes = new ArrayList<>(STORED_NOTES);
+		Instant start = Instant.parse("2024-05-01T00:00:00Z");
+		for (int i = 0; i < STORED_NOTES; i++) {
+			notes.add(BenchmarkData.note(i, start.plusSeconds(i)));
+		}
+		noteRepository.saveAll(notes);
+	}
+
+	@TearDown(Level.Iteration)
+	public void clearConversations() {
+		conversationRepository.deleteAllInBatch();
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public List<Note> findAllNotes() {
+		return noteRepository.findByUserIdAndIsDeletedFalse(1L);
+	}
+
+	@Benchmark
+	public List<Note> findNotesPage() {
+		return noteRepository.findByUserIdAndIsDeletedFalseAndIdGreaterThanOrderByIdAsc(1L, "note-2500", Limit.of(100));
+	}
+
+	@Benchmark
+	public Note saveNote() {
+		return noteRepository.save(BenchmarkData.note(nextNote++, Instant.now()));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void saveMessagesOneByOne() {
+		for (int i = 0; i < MESSAGES; i++) {
+			conversationRepository.save(BenchmarkData.message(i, Instant.now()));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void saveMessagesBatch() {
+		List<Conversation> messages = new ArrayList<>(MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			messages.add(BenchmarkData.message(i, Instant.now()));
+		}
+		conversationRepository.saveAll(messages);
+	}
+}
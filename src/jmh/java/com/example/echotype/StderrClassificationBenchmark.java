@@ -0,0 +1,56 @@
+package com.example.echotype;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classifying a worker's stderr lines: the per-line {@code String.matches} the controller used
+ * to run, which compiles the regex every time, against {@link PythonWorker#classify}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StderrClassificationBenchmark {
+
+	private static final String[] LINES = {
+			"2024-05-01 10:20:30,123 [INFO] Loading Whisper model",
+			"2024-05-01 10:20:31,456 [INFO] Transcription result: 'the derivative of x squared...' (length: 412)",
+			" 45%|████▌     | 1234/2742 [00:03<00:04, 352.11frames/s]",
+			"100%|██████████| 2742/2742 [00:07<00:00, 365.20frames/s]",
+			"/usr/lib/python3/site-packages/whisper/transcribe.py:114: UserWarning: FP16 is not supported on CPU",
+			"Traceback (most recent call last):",
+	};
+
+	@Benchmark
+	public void stringMatches(Blackhole blackhole) {
+		for (String line : LINES) {
+			if (line.matches("\\d{4}-\\d{2}-\\d{2}\\s+\\d{2}:\\d{2}:\\d{2}[,.]\\d{3}\\s+\\[\\w+\\].*")) {
+				blackhole.consume(PythonWorker.StderrLine.LOG);
+			} else if (line.matches("\\s*\\d+%.*")) {
+				blackhole.consume(PythonWorker.StderrLine.PROGRESS);
+			} else {
+				blackhole.consume(PythonWorker.StderrLine.OTHER);
+			}
+		}
+	}
+
+	@Benchmark
+	public void precompiled(Blackhole blackhole) {
+		for (String line : LINES) {
+			blackhole.consume(PythonWorker.classify(line));
+		}
+	}
+}
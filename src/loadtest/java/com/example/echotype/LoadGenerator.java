@@ -0,0 +1,477 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Closed-loop load generator for every {@link NoteController} endpoint. For each scenario and
+ * concurrency level it keeps that many clients sending requests back to back for
+ * {@code --duration} seconds, after {@code --warmup} seconds that are not counted, and reports
+ * throughput and p50/p99 latency. A 429 is counted as rejected rather than failed, and a 2xx
+ * whose JSON body has an {@code error} key as failed.
+ * <p>
+ * Without Whisper or Gemini, start the server with the stub workers from
+ * {@code src/loadtest/stubs} and a scheduler rate limit the load will not hit:
+ * <pre>
+ * java -jar target/echotype-0.0.1-SNAPSHOT.jar --echotype.worker.script-directory=src/loadtest/stubs \
+ *     --echotype.scheduler.rate-per-minute=1000000 --echotype.scheduler.burst=1000000
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--concurrency 1,8,32 --duration 30"
+ * </pre>
+ * Options: {@code --base-url} (http://localhost:8080), {@code --scenarios} (comma-separated,
+ * default all), {@code --concurrency} (1,4,16), {@code --duration} (20), {@code --warmup} (3),
+ * {@code --users} (50, ids from {@code --first-user} 900000), {@code --list-size} (50 notes and
+ * messages seeded per user), {@code --audio-seconds} (8) and {@code --unique-audio} (true; with
+ * false every upload is the same audio and hits the result cache).
+ */
+public final class LoadGenerator {
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+	private static final int SAMPLE_RATE = 16000;
+
+	@FunctionalInterface
+	private interface Scenario {
+		void run(Client client) throws Exception;
+	}
+
+	private final String baseUrl;
+	private final int users;
+	private final long firstUser;
+	private final int listSize;
+	private final double audioSeconds;
+	private final boolean uniqueAudio;
+	private final HttpClient http;
+	private final AtomicLong sequence = new AtomicLong();
+	private final Map<String, Scenario> scenarios = new LinkedHashMap<>();
+
+	private LoadGenerator(Map<String, String> options) {
+		this.baseUrl = options.getOrDefault("base-url", "http://localhost:8080");
+		this.users = Integer.parseInt(options.getOrDefault("users", "50"));
+		this.firstUser = Long.parseLong(options.getOrDefault("first-user", "900000"));
+		this.listSize = Integer.parseInt(options.getOrDefault("list-size", "50"));
+		this.audioSeconds = Double.parseDouble(options.getOrDefault("audio-seconds", "8"));
+		this.uniqueAudio = Boolean.parseBoolean(options.getOrDefault("unique-audio", "true"));
+		this.http = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(10))
+				.executor(Executors.newVirtualThreadPerTaskExecutor())
+				.build();
+		defineScenarios();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("--")) {
+				throw new IllegalArgumentException("Expected an option, got " + args[i]);
+			}
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		LoadGenerator generator = new LoadGenerator(options);
+		List<String> selected = options.containsKey("scenarios")
+				? Arrays.asList(options.get("scenarios").split(","))
+				: List.copyOf(generator.scenarios.keySet());
+		int[] levels = Arrays.stream(options.getOrDefault("concurrency", "1,4,16").split(",")).mapToInt(Integer::parseInt).toArray();
+		Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "20")));
+		Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "3")));
+
+		try {
+			generator.seed();
+		} catch (Exception e) {
+			System.out.println("Seeding failed, lists will be short: " + e.getMessage());
+		}
+		System.out.printf("%-22s %6s %9s %7s %8s %10s %9s %9s %9s%n",
+				"scenario", "conc", "requests", "failed", "rejected", "req/s", "p50 ms", "p99 ms", "max ms");
+		for (String name : selected) {
+			Scenario scenario = generator.scenarios.get(name.strip());
+			if (scenario == null) {
+				throw new IllegalArgumentException("Unknown scenario " + name + ", expected one of " + generator.scenarios.keySet());
+			}
+			for (int level : levels) {
+				generator.run(name.strip(), scenario, level, warmup, duration).print();
+			}
+		}
+		System.exit(0);
+	}
+
+	private void defineScenarios() {
+		scenarios.put("transcribe", client -> client.measure(multipart("/transcribe", client.userId(), audio())));
+		scenarios.put("transcribe-raw", client -> client.measure(HttpRequest.newBuilder(uri("/transcribe/raw?userId=" + client.userId()
+						+ "&conversationId=" + client.conversationId()))
+				.header("Content-Type", "audio/wav")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(audio()))));
+		scenarios.put("transcribe-job", client -> {
+			JsonNode job = JSON.readTree(client.measure(multipart("/transcribe/jobs", client.userId(), audio())).body());
+			if (job.has("jobId")) {
+				client.measureEvents(HttpRequest.newBuilder(uri("/transcribe/jobs/" + job.get("jobId").asText() + "/progress")).GET(), "result");
+			}
+		});
+		scenarios.put("transcribe-stream", client -> {
+			String query = "?userId=" + client.userId() + "&conversationId=" + client.conversationId();
+			JsonNode session = JSON.readTree(client.measure(post("/transcribe/stream" + query, "")).body());
+			String sessionId = session.get("sessionId").asText();
+			for (int chunk = 0; chunk < 2; chunk++) {
+				client.measure(multipart("/transcribe/stream/" + sessionId + "/chunks", null, audio()));
+			}
+			client.measure(post("/transcribe/stream/" + sessionId + "/complete", ""));
+			client.measureEvents(HttpRequest.newBuilder(uri("/transcribe/stream/" + sessionId + "/events")).GET(), "notes");
+		});
+		scenarios.put("process-text", client -> client.measure(postJson("/process-text", Map.of(
+				"text", "Explain eigenvalues of a 2 by 2 matrix, request " + (uniqueAudio ? sequence.incrementAndGet() : 0),
+				"userId", client.userId(),
+				"conversationId", client.conversationId()))));
+		scenarios.put("notes-save", client -> client.measure(postJson("/notes", note(client.userId()))));
+		scenarios.put("notes-batch", client -> {
+			List<Map<String, Object>> notes = new ArrayList<>();
+			long userId = client.userId();
+			for (int i = 0; i < 20; i++) {
+				notes.add(note(userId));
+			}
+			client.measure(postJson("/notes/batch", notes));
+		});
+		scenarios.put("notes-list", client -> client.measureList("/notes/" + client.userId()));
+		scenarios.put("notes-page", client -> client.measure(get("/notes/" + client.userId() + "/page?limit=20")));
+		scenarios.put("notes-range", client -> client.measure(get("/notes/" + client.userId() + "/range?limit=100")));
+		scenarios.put("notes-changes", client -> client.measure(get("/notes/" + client.userId() + "/changes?since=0&limit=100")));
+		scenarios.put("notes-stream", client -> client.measure(get("/notes/" + client.userId() + "/stream")));
+		scenarios.put("notes-delete", client -> {
+			Map<String, Object> note = note(client.userId());
+			client.send(postJson("/notes", note));
+			client.measure(HttpRequest.newBuilder(uri("/notes/" + note.get("id"))).DELETE());
+		});
+		scenarios.put("conversations-save", client -> client.measure(postJson("/api/conversations", message(client.userId(), client.conversationId()))));
+		scenarios.put("conversations-batch", client -> {
+			List<Map<String, Object>> messages = new ArrayList<>();
+			long userId = client.userId();
+			String conversationId = client.conversationId();
+			for (int i = 0; i < 20; i++) {
+				messages.add(message(userId, conversationId));
+			}
+			client.measure(postJson("/api/conversations/batch", messages));
+		});
+		scenarios.put("conversations-list", client -> client.measureList("/api/conversations/" + client.userId()));
+		scenarios.put("conversations-page", client -> client.measure(get("/api/conversations/" + client.userId() + "/page?limit=20")));
+		scenarios.put("conversations-range", client -> client.measure(get("/api/conversations/" + client.userId() + "/range?limit=100")));
+		scenarios.put("conversations-stream", client -> client.measure(get("/api/conversations/" + client.userId() + "/stream")));
+		scenarios.put("conversations-delete", client -> {
+			String conversationId = "load-" + UUID.randomUUID();
+			client.send(postJson("/api/conversations", message(client.userId(), conversationId)));
+			client.measure(HttpRequest.newBuilder(uri("/api/conversations/" + conversationId)).DELETE());
+		});
+		scenarios.put("search", client -> client.measure(get("/search?userId=" + client.userId() + "&q=" + encode("matrix eigenvalues"))));
+		scenarios.put("cache-stats", client -> client.measure(get("/api/cache/stats")));
+	}
+
+	/**
+	 * Gives every user {@code list-size} notes and messages, so the list endpoints return
+	 * something realistic.
+	 */
+	private void seed() throws Exception {
+		System.out.printf("Seeding %d users with %d notes and messages each%n", users, listSize);
+		Client client = new Client(null);
+		for (int user = 0; user < users; user++) {
+			long userId = firstUser + user;
+			List<Map<String, Object>> notes = new ArrayList<>();
+			List<Map<String, Object>> messages = new ArrayList<>();
+			for (int i = 0; i < listSize; i++) {
+				notes.add(note(userId));
+				messages.add(message(userId, "load-" + userId + "-" + (i / 10)));
+			}
+			client.send(postJson("/notes/batch", notes));
+			client.send(postJson("/api/conversations/batch", messages));
+		}
+	}
+
+	private Result run(String name, Scenario scenario, int concurrency, Duration warmup, Duration duration) throws Exception {
+		Instant measureFrom = Instant.now().plus(warmup);
+		Instant end = measureFrom.plus(duration);
+		List<Client> clients = new ArrayList<>();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<?>> running = new ArrayList<>();
+			for (int i = 0; i < concurrency; i++) {
+				Client client = new Client(measureFrom);
+				clients.add(client);
+				running.add(executor.submit(() -> {
+					while (Instant.now().isBefore(end)) {
+						client.iteration(scenario);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : running) {
+				future.get();
+			}
+		}
+		return Result.of(name, concurrency, duration, clients);
+	}
+
+	/**
+	 * One simulated client; counts only what it measures after the warmup.
+	 */
+	private final class Client {
+		private final Instant measureFrom;
+		private final Map<String, String> etags = new HashMap<>();
+		private long[] latencies = new long[1024];
+		private int count;
+		private long failed;
+		private long rejected;
+		private long iterationNanos;
+		private boolean iterationFailed;
+		private boolean iterationRejected;
+
+		Client(Instant measureFrom) {
+			this.measureFrom = measureFrom;
+		}
+
+		long userId() {
+			return firstUser + Math.floorMod(sequence.incrementAndGet(), users);
+		}
+
+		String conversationId() {
+			return "load-" + UUID.randomUUID();
+		}
+
+		void iteration(Scenario scenario) {
+			boolean counted = !Instant.now().isBefore(measureFrom);
+			iterationNanos = 0;
+			iterationFailed = false;
+			iterationRejected = false;
+			try {
+				scenario.run(this);
+			} catch (Exception e) {
+				iterationFailed = true;
+			}
+			if (!counted) {
+				return;
+			}
+			if (iterationRejected) {
+				rejected++;
+			} else if (iterationFailed) {
+				failed++;
+			} else {
+				if (count == latencies.length) {
+					latencies = Arrays.copyOf(latencies, count * 2);
+				}
+				latencies[count++] = iterationNanos;
+			}
+		}
+
+		HttpResponse<String> measure(HttpRequest.Builder request) throws Exception {
+			long start = System.nanoTime();
+			HttpResponse<String> response = http.send(request.timeout(Duration.ofMinutes(10)).build(), HttpResponse.BodyHandlers.ofString());
+			iterationNanos += System.nanoTime() - start;
+			check(response.statusCode(), response.body());
+			return response;
+		}
+
+		/**
+		 * Reads an event stream until the server closes it and checks that it ended with
+		 * {@code expected}.
+		 */
+		void measureEvents(HttpRequest.Builder request, String expected) throws Exception {
+			long start = System.nanoTime();
+			HttpResponse<Stream<String>> response = http.send(request.timeout(Duration.ofMinutes(10)).build(), HttpResponse.BodyHandlers.ofLines());
+			String last = null;
+			String data = null;
+			try (Stream<String> lines = response.body()) {
+				for (String line : (Iterable<String>) lines::iterator) {
+					if (line.startsWith("event:")) {
+						last = line.substring(6).strip();
+					} else if (line.startsWith("data:")) {
+						data = line.substring(5);
+					}
+				}
+			}
+			iterationNanos += System.nanoTime() - start;
+			if (response.statusCode() != 200 || !expected.equals(last)) {
+				iterationFailed = true;
+			} else if (data != null) {
+				check(200, data);
+			}
+		}
+
+		/**
+		 * Fetches a list the way the app does, revalidating with the ETag it last got.
+		 */
+		void measureList(String path) throws Exception {
+			HttpRequest.Builder request = get(path);
+			String etag = etags.get(path);
+			if (etag != null) {
+				request.header("If-None-Match", etag);
+			}
+			HttpResponse<String> response = measure(request);
+			response.headers().firstValue("ETag").ifPresent(value -> etags.put(path, value));
+		}
+
+		void send(HttpRequest.Builder request) throws Exception {
+			HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() >= 400) {
+				throw new IllegalStateException("Setup request failed with " + response.statusCode() + ": " + response.body());
+			}
+		}
+
+		private void check(int status, String body) {
+			if (status == 429) {
+				iterationRejected = true;
+			} else if (status >= 400) {
+				iterationFailed = true;
+			} else if (body.startsWith("{") && body.length() < 65536) {
+				try {
+					if (JSON.readTree(body).has("error")) {
+						iterationFailed = true;
+					}
+				} catch (Exception e) {
+					iterationFailed = true;
+				}
+			}
+		}
+	}
+
+	private record Result(String scenario, int concurrency, long requests, long failed, long rejected,
+			double throughput, double p50Ms, double p99Ms, double maxMs) {
+
+		static Result of(String scenario, int concurrency, Duration duration, List<Client> clients) {
+			long total = clients.stream().mapToLong(client -> client.count).sum();
+			long[] all = new long[(int) total];
+			int offset = 0;
+			long failed = 0;
+			long rejected = 0;
+			for (Client client : clients) {
+				System.arraycopy(client.latencies, 0, all, offset, client.count);
+				offset += client.count;
+				failed += client.failed;
+				rejected += client.rejected;
+			}
+			Arrays.sort(all);
+			double seconds = duration.toNanos() / 1e9;
+			return new Result(scenario, concurrency, total + failed + rejected, failed, rejected, total / seconds,
+					percentile(all, 0.50), percentile(all, 0.99), all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+		}
+
+		private static double percentile(long[] sorted, double quantile) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(quantile * sorted.length) - 1;
+			return sorted[Math.max(0, index)] / 1e6;
+		}
+
+		void print() {
+			System.out.printf("%-22s %6d %9d %7d %8d %10.1f %9.1f %9.1f %9.1f%n",
+					scenario, concurrency, requests, failed, rejected, throughput, p50Ms, p99Ms, maxMs);
+		}
+	}
+
+	private Map<String, Object> note(long userId) {
+		Map<String, Object> note = new LinkedHashMap<>();
+		note.put("id", "load-" + UUID.randomUUID());
+		note.put("title", "Linear Algebra " + sequence.incrementAndGet());
+		note.put("content", "# Linear Algebra Notes\n\n## Key Concepts\n- Matrices: $\\begin{bmatrix} 1 & 2 \\\\ 3 & 4 \\end{bmatrix}$\n- Eigenvalues solve $\\det(A - \\lambda I) = 0$");
+		note.put("userId", userId);
+		note.put("timestamp", Instant.now().toString());
+		return note;
+	}
+
+	private Map<String, Object> message(long userId, String conversationId) {
+		Map<String, Object> message = new LinkedHashMap<>();
+		message.put("conversationId", conversationId);
+		message.put("userId", userId);
+		message.put("sender", "user");
+		message.put("messageText", "Explain eigenvalues with an example");
+		message.put("timestamp", Instant.now().toString());
+		return message;
+	}
+
+	/**
+	 * A 16 kHz mono WAV of tones separated by short pauses, so silence trimming keeps most of
+	 * it. Unless {@code --unique-audio false}, every call gets a slightly different pitch and
+	 * therefore different bytes, which keeps the result cache out of the measurement.
+	 */
+	private byte[] audio() {
+		long variant = uniqueAudio ? sequence.incrementAndGet() : 0;
+		int samples = (int) (audioSeconds * SAMPLE_RATE);
+		ByteBuffer pcm = ByteBuffer.allocate(samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+		double frequency = 220 + variant % 1000 * 0.25;
+		for (int i = 0; i < samples; i++) {
+			boolean pause = i % (2 * SAMPLE_RATE) >= 1.6 * SAMPLE_RATE;
+			double value = pause ? 0 : 0.3 * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE);
+			pcm.putShort((short) (value * Short.MAX_VALUE));
+		}
+		ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+		header.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + samples * 2)
+				.put("WAVE".getBytes(StandardCharsets.US_ASCII))
+				.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16).putShort((short) 1).putShort((short) 1)
+				.putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2).putShort((short) 2).putShort((short) 16)
+				.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(samples * 2);
+		ByteArrayOutputStream wav = new ByteArrayOutputStream(44 + samples * 2);
+		wav.writeBytes(header.array());
+		wav.writeBytes(pcm.array());
+		return wav.toByteArray();
+	}
+
+	private HttpRequest.Builder multipart(String path, Long userId, byte[] audio) {
+		String boundary = "load-" + UUID.randomUUID();
+		ByteArrayOutputStream body = new ByteArrayOutputStream(audio.length + 512);
+		if (userId != null) {
+			writePart(body, boundary, "userId", String.valueOf(userId));
+			writePart(body, boundary, "conversationId", "load-" + UUID.randomUUID());
+		}
+		body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"audio\"; filename=\"audio.wav\"\r\n"
+				+ "Content-Type: audio/wav\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		body.writeBytes(audio);
+		body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+		return HttpRequest.newBuilder(uri(path))
+				.header("Content-Type", "multipart/form-data; boundary=" + boundary)
+				.POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+	}
+
+	private static void writePart(ByteArrayOutputStream body, String boundary, String name, String value) {
+		body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n")
+				.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private HttpRequest.Builder postJson(String path, Object body) throws Exception {
+		return HttpRequest.newBuilder(uri(path))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(JSON.writeValueAsBytes(body)));
+	}
+
+	private HttpRequest.Builder post(String path, String body) {
+		return HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body));
+	}
+
+	private HttpRequest.Builder get(String path) {
+		return HttpRequest.newBuilder(uri(path)).GET();
+	}
+
+	private URI uri(String path) {
+		return URI.create(baseUrl + path);
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,61 @@
+import os
+import sys
+import time
+import hashlib
+import logging
+
+# Stand-in for format_notes.py that needs no GEMINI_API_KEY or network. It sleeps for
+# ECHOTYPE_STUB_FORMAT_MS and returns Markdown built from the input, so the same text and
+# history always give the same notes.
+logging.basicConfig(
+    level=logging.INFO,
+    format='%(asctime)s [%(levelname)s] %(message)s',
+    handlers=[logging.StreamHandler()]
+)
+logger = logging.getLogger(__name__)
+
+# Milliseconds, from the environment the JVM starts the workers with. Jitter is derived from
+# the input, so the same request always takes the same time.
+BASE_MS = float(os.getenv("ECHOTYPE_STUB_FORMAT_MS", "300"))
+JITTER_MS = float(os.getenv("ECHOTYPE_STUB_JITTER_MS", "0"))
+STARTUP_MS = float(os.getenv("ECHOTYPE_STUB_STARTUP_MS", "0"))
+
+
+def build_notes(transcription, conversation_history):
+    words = transcription.split()
+    title = " ".join(words[:4]).title()
+    lines = [f"# {title} Notes", "", "## Key Concepts"]
+    for start in range(0, len(words), 8):
+        lines.append("- " + " ".join(words[start:start + 8]))
+    lines += ["", "## Example", "Solve $2x + 3 = 7$, so $x = 2$."]
+    if conversation_history:
+        lines += ["", f"Continues a conversation of {len(conversation_history.splitlines())} messages."]
+    return "\n".join(lines)
+
+
+def run_worker():
+    import worker_protocol
+
+    with worker_protocol.timed("model_setup"):
+        time.sleep(STARTUP_MS / 1000.0)
+
+    def handle(request, emit):
+        transcription = (request.get("text") or "").strip()
+        conversation_history = (request.get("history") or "").strip()
+        if not transcription:
+            return "Please specify a topic (e.g., math, history) for detailed notes."
+
+        seed = hashlib.sha256((transcription + "\n" + conversation_history).encode("utf-8")).digest()
+        with worker_protocol.timed("gemini"):
+            time.sleep((BASE_MS + JITTER_MS * int.from_bytes(seed[:4], "big") / 0xFFFFFFFF) / 1000.0)
+        return build_notes(transcription, conversation_history)
+
+    worker_protocol.serve(handle)
+
+
+if __name__ == "__main__":
+    logger.info("Starting stub format_notes.py")
+    if "--worker" not in sys.argv[1:]:
+        print("Error: the stub only runs as a worker (--worker)", file=sys.stderr)
+        sys.exit(1)
+    run_worker()
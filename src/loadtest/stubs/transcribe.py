@@ -0,0 +1,99 @@
+import io
+import os
+import sys
+import time
+import wave
+import hashlib
+import logging
+
+# Stand-in for transcribe.py that needs neither Whisper nor a GPU. It speaks the same worker
+# protocol, sleeps for ECHOTYPE_STUB_TRANSCRIBE_MS plus ECHOTYPE_STUB_TRANSCRIBE_MS_PER_AUDIO_SECOND
+# per second of audio, and returns text derived from the audio bytes, so identical audio
+# always gives the identical transcript.
+logging.basicConfig(
+    level=logging.INFO,
+    format='%(asctime)s [%(levelname)s] %(message)s',
+    handlers=[logging.StreamHandler()]
+)
+logger = logging.getLogger(__name__)
+
+# Milliseconds, from the environment the JVM starts the workers with. Jitter is derived from
+# the audio, so the same request always takes the same time.
+BASE_MS = float(os.getenv("ECHOTYPE_STUB_TRANSCRIBE_MS", "200"))
+PER_AUDIO_SECOND_MS = float(os.getenv("ECHOTYPE_STUB_TRANSCRIBE_MS_PER_AUDIO_SECOND", "50"))
+JITTER_MS = float(os.getenv("ECHOTYPE_STUB_JITTER_MS", "0"))
+STARTUP_MS = float(os.getenv("ECHOTYPE_STUB_STARTUP_MS", "0"))
+
+WORDS = ("vector", "matrix", "eigenvalue", "derivative", "integral", "limit", "function",
+         "equation", "theorem", "proof", "example", "solve", "linear", "algebra", "calculus",
+         "history", "empire", "revolution", "treaty", "century", "cell", "energy", "force",
+         "momentum", "reaction", "molecule", "the", "and", "of", "a", "is", "we", "then")
+# Roughly how fast people speak
+WORDS_PER_SECOND = 2.5
+# Unknown formats are estimated the way the JVM does, at about 32 kbit/s
+BYTES_PER_SECOND = 4000
+
+
+def audio_seconds(data):
+    if data[:4] == b"RIFF" and data[8:12] == b"WAVE":
+        try:
+            with wave.open(io.BytesIO(data)) as audio:
+                return audio.getnframes() / float(audio.getframerate())
+        except (wave.Error, EOFError):
+            pass
+    return len(data) / BYTES_PER_SECOND
+
+
+def transcript(seed, seconds):
+    count = max(1, int(seconds * WORDS_PER_SECOND))
+    words = []
+    for i in range(count):
+        words.append(WORDS[seed[i % len(seed)] * (i + 1) % len(WORDS)])
+    return " ".join(words)
+
+
+def load_request_audio(request):
+    if request.get("stream"):
+        return b"".join(bytes(chunk) for chunk in request["body"])
+    audio_file = request["audioFile"]
+    if not os.path.exists(audio_file):
+        raise FileNotFoundError(f"File not found: {audio_file}")
+    with open(audio_file, "rb") as file:
+        return file.read()
+
+
+def run_worker():
+    import worker_protocol
+
+    with worker_protocol.timed("model_load"):
+        time.sleep(STARTUP_MS / 1000.0)
+
+    def handle(request, emit):
+        with worker_protocol.timed("audio_decode"):
+            data = load_request_audio(request)
+        seed = hashlib.sha256(data).digest()
+        seconds = audio_seconds(data)
+        emit({"event": "audio", "duration": seconds})
+
+        latency = BASE_MS + PER_AUDIO_SECOND_MS * seconds + JITTER_MS * int.from_bytes(seed[:4], "big") / 0xFFFFFFFF
+        text = transcript(seed, seconds)
+        with worker_protocol.timed("inference"):
+            # Progress in ten steps, like Whisper's bar over its 30-second windows
+            emit.progress(0, 10)
+            for step in range(1, 11):
+                time.sleep(latency / 10000.0)
+                emit.progress(step, 10)
+        if request.get("segments"):
+            emit({"event": "segment", "start": 0.0, "end": seconds, "text": text})
+        logger.info(f"Stub transcription of {len(data)} bytes ({seconds:.1f} s) in {latency:.0f} ms")
+        return text
+
+    worker_protocol.serve(handle)
+
+
+if __name__ == "__main__":
+    logger.info("Starting stub transcribe.py")
+    if "--worker" not in sys.argv[1:]:
+        print("Error: the stub only runs as a worker (--worker)", file=sys.stderr)
+        sys.exit(1)
+    run_worker()
@@ -0,0 +1,200 @@
+package com.example.echotype;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits long recordings into chunks Whisper can transcribe in parallel, and joins their
+ * transcripts back together. Works on the 16 kHz mono WAV written by {@link AudioPreprocessor}.
+ * Each cut is placed at the quietest pause in the {@code search-seconds} before the target
+ * chunk length, and every chunk but the first starts {@code overlap-seconds} before its cut so
+ * a word on the boundary is heard whole; words transcribed twice are dropped when joining.
+ */
+@Component
+public class AudioChunker {
+
+    private static final int FRAME_SAMPLES = AudioPreprocessor.SAMPLE_RATE * 30 / 1000;
+    // A pause is judged over 300 ms, so a single quiet frame inside a word is not taken for one
+    private static final int PAUSE_FRAMES = 10;
+    // Faster than almost anyone speaks, so every word said in the overlap can be matched
+    private static final double MAX_WORDS_PER_SECOND = 4;
+
+    @Value("${echotype.transcribe.chunk.enabled:true}")
+    private boolean enabled;
+
+    @Value("${echotype.transcribe.chunk.seconds:120}")
+    private double chunkSeconds;
+
+    @Value("${echotype.transcribe.chunk.overlap-seconds:1.0}")
+    private double overlapSeconds;
+
+    @Value("${echotype.transcribe.chunk.search-seconds:15}")
+    private double searchSeconds;
+
+    public record Chunk(File file, double offsetSeconds, double seconds) {
+    }
+
+    /**
+     * @return the chunk files, which the caller must delete, or an empty list if the audio is
+     *         short enough to transcribe in one piece
+     */
+    public List<Chunk> split(File wav) throws IOException {
+        long samples = (wav.length() - AudioPreprocessor.WAV_HEADER_BYTES) / 2;
+        long chunkSamples = (long) (chunkSeconds * AudioPreprocessor.SAMPLE_RATE);
+        // Leave a short remainder on the last chunk rather than making a tiny one
+        if (!enabled || samples < chunkSamples * 3 / 2) {
+            return List.of();
+        }
+        double[] energy = frameEnergies(wav);
+        long searchSamples = Math.min(chunkSamples / 2, (long) (searchSeconds * AudioPreprocessor.SAMPLE_RATE));
+        List<Long> cuts = new ArrayList<>();
+        long position = 0;
+        while (samples - position >= chunkSamples * 3 / 2) {
+            long target = position + chunkSamples;
+            position = quietestPoint(energy, target - searchSamples, target);
+            cuts.add(position);
+        }
+        cuts.add(samples);
+
+        long overlapSamples = (long) (overlapSeconds * AudioPreprocessor.SAMPLE_RATE);
+        List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel source = FileChannel.open(wav.toPath(), StandardOpenOption.READ)) {
+            long start = 0;
+            for (long end : cuts) {
+                long from = Math.max(0, start - overlapSamples);
+                chunks.add(writeChunk(source, from, end));
+                start = end;
+            }
+        } catch (IOException e) {
+            delete(chunks);
+            throw e;
+        }
+        return chunks;
+    }
+
+    public static void delete(List<Chunk> chunks) throws IOException {
+        for (Chunk chunk : chunks) {
+            Files.deleteIfExists(chunk.file().toPath());
+        }
+    }
+
+    /**
+     * Joins chunk transcripts in order. Where the end of one transcript and the start of the
+     * next repeat the same words, which happens when speech falls in the overlap, the repeat is
+     * dropped; words are compared ignoring case and punctuation.
+     */
+    public String join(List<String> transcripts) {
+        int maxOverlapWords = (int) Math.ceil(overlapSeconds * MAX_WORDS_PER_SECOND);
+        List<String> words = new ArrayList<>();
+        for (String transcript : transcripts) {
+            if (transcript.isBlank()) {
+                continue;
+            }
+            List<String> next = List.of(transcript.trim().split("\\s+"));
+            int repeated = 0;
+            for (int length = Math.min(maxOverlapWords, Math.min(words.size(), next.size())); length > 0; length--) {
+                if (sameWords(words.subList(words.size() - length, words.size()), next.subList(0, length))) {
+                    repeated = length;
+                    break;
+                }
+            }
+            words.addAll(next.subList(repeated, next.size()));
+        }
+        return String.join(" ", words);
+    }
+
+    private static boolean sameWords(List<String> a, List<String> b) {
+        for (int i = 0; i < a.size(); i++) {
+            if (!normalize(a.get(i)).equals(normalize(b.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String normalize(String word) {
+        return word.replaceAll("[^\\p{L}\\p{N}]", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static double[] frameEnergies(File wav) throws IOException {
+        long samples = (wav.length() - AudioPreprocessor.WAV_HEADER_BYTES) / 2;
+        double[] energy = new double[(int) ((samples + FRAME_SAMPLES - 1) / FRAME_SAMPLES)];
+        byte[] bytes = new byte[FRAME_SAMPLES * 2];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(wav.toPath()), 64 * 1024)) {
+            in.skipNBytes(AudioPreprocessor.WAV_HEADER_BYTES);
+            for (int frame = 0; frame < energy.length; frame++) {
+                int read = in.readNBytes(bytes, 0, bytes.length);
+                double sum = 0;
+                for (int offset = 0; offset + 1 < read; offset += 2) {
+                    double sample = buffer.getShort(offset);
+                    sum += sample * sample;
+                }
+                energy[frame] = sum / Math.max(1, read / 2);
+            }
+        }
+        return energy;
+    }
+
+    /**
+     * Sample position in the middle of the quietest {@link #PAUSE_FRAMES} window between
+     * {@code from} and {@code to}; where several windows in a row are equally quiet, as in
+     * digital silence, the middle of that run.
+     */
+    private static long quietestPoint(double[] energy, long from, long to) {
+        int first = (int) (from / FRAME_SAMPLES);
+        int last = (int) Math.min(energy.length - PAUSE_FRAMES, to / FRAME_SAMPLES);
+        int best = last;
+        int bestRunEnd = last;
+        double bestEnergy = Double.MAX_VALUE;
+        for (int frame = first; frame <= last; frame++) {
+            double sum = 0;
+            for (int i = 0; i < PAUSE_FRAMES; i++) {
+                sum += energy[frame + i];
+            }
+            if (sum < bestEnergy) {
+                bestEnergy = sum;
+                best = frame;
+                bestRunEnd = frame;
+            } else if (sum == bestEnergy && frame == bestRunEnd + 1) {
+                bestRunEnd = frame;
+            }
+        }
+        return (long) ((best + bestRunEnd) / 2 + PAUSE_FRAMES / 2) * FRAME_SAMPLES;
+    }
+
+    private static Chunk writeChunk(FileChannel source, long from, long to) throws IOException {
+        File file = File.createTempFile("audio-chunk", ".wav");
+        long bytes = (to - from) * 2;
+        try (FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            target.write(ByteBuffer.wrap(AudioPreprocessor.wavHeader(bytes)));
+            long position = AudioPreprocessor.WAV_HEADER_BYTES + from * 2;
+            long copied = 0;
+            while (copied < bytes) {
+                long transferred = source.transferTo(position + copied, bytes - copied, target);
+                if (transferred == 0) {
+                    throw new IOException("Audio ended before the end of chunk at " + to);
+                }
+                copied += transferred;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+        return new Chunk(file, from / (double) AudioPreprocessor.SAMPLE_RATE,
+                (to - from) / (double) AudioPreprocessor.SAMPLE_RATE);
+    }
+}
@@ -0,0 +1,460 @@
+package com.example.echotype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Prepares uncompressed uploads (WAV, AIFF, AU) for Whisper on the JVM: decodes the PCM,
+ * downmixes to mono, resamples to 16 kHz and removes silence with an energy-based voice
+ * activity detector, since Whisper's cost grows with the length of the audio. Leading and
+ * trailing silence is cut down to {@code padding-ms}; pauses longer than {@code max-silence-ms}
+ * are shortened to that length, so the model still hears a pause. Everything runs as one pass
+ * over fixed-size buffers. Compressed formats are left to the worker's ffmpeg.
+ */
+@Component
+public class AudioPreprocessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioPreprocessor.class);
+    static final int SAMPLE_RATE = 16000;
+    static final int WAV_HEADER_BYTES = 44;
+    private static final int BUFFER_FRAMES = 4096;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${echotype.audio.preprocess.enabled:true}")
+    private boolean enabled;
+
+    @Value("${echotype.audio.vad.frame-ms:30}")
+    private int frameMs;
+
+    @Value("${echotype.audio.vad.min-level-db:-50}")
+    private double minLevelDb;
+
+    @Value("${echotype.audio.vad.margin-db:12}")
+    private double marginDb;
+
+    @Value("${echotype.audio.vad.padding-ms:300}")
+    private int paddingMs;
+
+    @Value("${echotype.audio.vad.max-silence-ms:1000}")
+    private int maxSilenceMs;
+
+    /**
+     * The preprocessed audio, a 16 kHz mono 16-bit WAV file the caller must delete.
+     */
+    public record PreprocessedAudio(File file, double inputSeconds, double outputSeconds) {
+        public double removedSeconds() {
+            return inputSeconds - outputSeconds;
+        }
+    }
+
+    /**
+     * @return empty if preprocessing is disabled, the format is not uncompressed PCM or no
+     *         speech was detected; the original file should then be used as it is
+     */
+    public Optional<PreprocessedAudio> preprocess(File input) throws IOException {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        AudioInputStream source;
+        try {
+            source = AudioSystem.getAudioInputStream(input);
+        } catch (UnsupportedAudioFileException e) {
+            logger.debug("Not preprocessing {}: {}", input.getName(), e.getMessage());
+            return Optional.empty();
+        }
+        File output = File.createTempFile("audio-16k", ".wav");
+        boolean kept = false;
+        try (AudioInputStream pcm = toPcm(source)) {
+            if (pcm == null) {
+                return Optional.empty();
+            }
+            AudioFormat format = pcm.getFormat();
+            long samplesIn;
+            long samplesOut;
+            try (WavWriter writer = new WavWriter(output)) {
+                SilenceTrimmer trimmer = new SilenceTrimmer(writer, SAMPLE_RATE * frameMs / 1000, minLevelDb, marginDb,
+                        paddingMs / frameMs, maxSilenceMs / frameMs);
+                Resampler resampler = new Resampler(format.getSampleRate(), SAMPLE_RATE, trimmer::accept);
+                samplesIn = decode(pcm, resampler);
+                resampler.finish();
+                trimmer.finish();
+                if (!trimmer.heardSpeech()) {
+                    logger.info("No speech detected in {}, sending it unprocessed", input.getName());
+                    return Optional.empty();
+                }
+                samplesOut = writer.samples;
+            }
+            PreprocessedAudio result = new PreprocessedAudio(output,
+                    samplesIn / (double) format.getSampleRate(), samplesOut / (double) SAMPLE_RATE);
+            logger.info("Preprocessed {}: {} s -> {} s, removed {} s", input.getName(),
+                    String.format("%.1f", result.inputSeconds()), String.format("%.1f", result.outputSeconds()),
+                    String.format("%.1f", result.removedSeconds()));
+            metrics.audioTrimmed(result.inputSeconds(), result.removedSeconds());
+            kept = true;
+            return Optional.of(result);
+        } finally {
+            if (!kept) {
+                Files.deleteIfExists(output.toPath());
+            }
+        }
+    }
+
+    private static AudioInputStream toPcm(AudioInputStream source) throws IOException {
+        AudioFormat.Encoding encoding = source.getFormat().getEncoding();
+        if (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) || AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding)
+                || AudioFormat.Encoding.PCM_FLOAT.equals(encoding)) {
+            return source;
+        }
+        AudioFormat format = source.getFormat();
+        AudioFormat target = new AudioFormat(format.getSampleRate(), 16, format.getChannels(), true, false);
+        if (AudioSystem.isConversionSupported(target, format)) {
+            return AudioSystem.getAudioInputStream(target, source);
+        }
+        source.close();
+        return null;
+    }
+
+    /**
+     * Reads the stream in fixed-size buffers, passing each frame downmixed to a mono sample in
+     * [-1, 1], and returns the number of frames read.
+     */
+    private static long decode(AudioInputStream pcm, Resampler resampler) throws IOException {
+        AudioFormat format = pcm.getFormat();
+        int channels = format.getChannels();
+        int bytesPerSample = format.getSampleSizeInBits() / 8;
+        int frameSize = format.getFrameSize();
+        boolean floating = AudioFormat.Encoding.PCM_FLOAT.equals(format.getEncoding());
+        boolean unsigned = AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding());
+        ByteOrder order = format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+        byte[] bytes = new byte[BUFFER_FRAMES * frameSize];
+        float[] mono = new float[BUFFER_FRAMES];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+        long frames = 0;
+        int filled = 0;
+        int read;
+        while ((read = pcm.read(bytes, filled, bytes.length - filled)) != -1) {
+            filled += read;
+            int complete = filled / frameSize;
+            for (int frame = 0; frame < complete; frame++) {
+                float sum = 0;
+                for (int channel = 0; channel < channels; channel++) {
+                    int offset = frame * frameSize + channel * bytesPerSample;
+                    sum += sample(buffer, offset, bytesPerSample, floating, unsigned);
+                }
+                mono[frame] = sum / channels;
+            }
+            resampler.accept(mono, complete);
+            frames += complete;
+            int rest = filled - complete * frameSize;
+            System.arraycopy(bytes, complete * frameSize, bytes, 0, rest);
+            filled = rest;
+        }
+        return frames;
+    }
+
+    private static float sample(ByteBuffer buffer, int offset, int bytes, boolean floating, boolean unsigned) {
+        if (floating) {
+            return bytes == 8 ? (float) buffer.getDouble(offset) : buffer.getFloat(offset);
+        }
+        return switch (bytes) {
+            case 1 -> unsigned ? ((buffer.get(offset) & 0xFF) - 128) / 128f : buffer.get(offset) / 128f;
+            case 2 -> buffer.getShort(offset) / 32768f;
+            case 3 -> {
+                // The most significant byte keeps its sign
+                int first = buffer.get(offset);
+                int middle = buffer.get(offset + 1) & 0xFF;
+                int last = buffer.get(offset + 2);
+                int value = buffer.order() == ByteOrder.LITTLE_ENDIAN
+                        ? (last << 16) | (middle << 8) | (first & 0xFF)
+                        : (first << 16) | (middle << 8) | (last & 0xFF);
+                yield value / 8388608f;
+            }
+            default -> buffer.getInt(offset) / 2147483648f;
+        };
+    }
+
+    /**
+     * Header of a 16-bit mono WAV at {@link #SAMPLE_RATE} holding {@code dataBytes} of samples.
+     */
+    static byte[] wavHeader(long dataBytes) {
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] {'R', 'I', 'F', 'F'}).putInt((int) (36 + dataBytes))
+                .put(new byte[] {'W', 'A', 'V', 'E'})
+                .put(new byte[] {'f', 'm', 't', ' '}).putInt(16)
+                .putShort((short) 1).putShort((short) 1)
+                .putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2)
+                .putShort((short) 2).putShort((short) 16)
+                .put(new byte[] {'d', 'a', 't', 'a'}).putInt((int) dataBytes);
+        return header.array();
+    }
+
+    @FunctionalInterface
+    interface SampleSink {
+        void accept(float sample) throws IOException;
+    }
+
+    /**
+     * Streaming band-limited resampler: each output sample is a Hann-windowed sinc
+     * interpolation of the input around it, with the cutoff lowered when downsampling so
+     * nothing above the new Nyquist frequency folds back into speech.
+     */
+    static final class Resampler {
+
+        private static final int ZERO_CROSSINGS = 8;
+        private static final int TABLE_RESOLUTION = 256;
+
+        private final SampleSink sink;
+        private final boolean passThrough;
+        private final double step;
+        private final int halfWidth;
+        private final float[] kernel;
+        private float[] buffer = new float[BUFFER_FRAMES * 2];
+        private int size;
+        // Position of the next output sample, in input samples relative to buffer[0]
+        private double position;
+
+        Resampler(float inputRate, int outputRate, SampleSink sink) {
+            this.sink = sink;
+            this.passThrough = Math.round(inputRate) == outputRate;
+            this.step = inputRate / outputRate;
+            double cutoff = Math.min(1.0, 1.0 / step);
+            this.halfWidth = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+            this.kernel = new float[2 * halfWidth * TABLE_RESOLUTION + 1];
+            for (int i = 0; i < kernel.length; i++) {
+                double t = (i - halfWidth * TABLE_RESOLUTION) / (double) TABLE_RESOLUTION;
+                double x = Math.PI * cutoff * t;
+                double sinc = x == 0 ? 1 : Math.sin(x) / x;
+                double window = 0.5 * (1 + Math.cos(Math.PI * t / halfWidth));
+                kernel[i] = (float) (cutoff * sinc * window);
+            }
+        }
+
+        void accept(float[] samples, int count) throws IOException {
+            if (passThrough) {
+                for (int i = 0; i < count; i++) {
+                    sink.accept(samples[i]);
+                }
+                return;
+            }
+            if (size + count > buffer.length) {
+                float[] grown = new float[Math.max(buffer.length * 2, size + count)];
+                System.arraycopy(buffer, 0, grown, 0, size);
+                buffer = grown;
+            }
+            System.arraycopy(samples, 0, buffer, size, count);
+            size += count;
+            // Emit every output sample whose window is complete
+            while (position + halfWidth < size) {
+                sink.accept(interpolate(position));
+                position += step;
+            }
+            int drop = (int) Math.floor(position) - halfWidth;
+            if (drop > 0) {
+                System.arraycopy(buffer, drop, buffer, 0, size - drop);
+                size -= drop;
+                position -= drop;
+            }
+        }
+
+        void finish() throws IOException {
+            if (passThrough) {
+                return;
+            }
+            while (position < size) {
+                sink.accept(interpolate(position));
+                position += step;
+            }
+        }
+
+        private float interpolate(double at) {
+            int center = (int) Math.floor(at);
+            float sum = 0;
+            // Samples before the start of the audio or past its end count as zero
+            for (int k = Math.max(0, center - halfWidth + 1); k <= Math.min(size - 1, center + halfWidth); k++) {
+                int index = (int) Math.round((at - k + halfWidth) * TABLE_RESOLUTION);
+                if (index >= 0 && index < kernel.length) {
+                    sum += buffer[k] * kernel[index];
+                }
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Energy-based voice activity detection over fixed-length frames. A frame is speech when
+     * it is louder than {@code minLevelDb} and {@code marginDb} above the noise floor, which
+     * follows quiet frames down at once and creeps up slowly. Silence is held back until the
+     * next speech frame shows how long it was.
+     */
+    static final class SilenceTrimmer {
+
+        private static final double FLOOR_RISE_DB_PER_FRAME = 0.01;
+
+        private final SampleSink sink;
+        private final float[] frame;
+        private final double minLevelDb;
+        private final double marginDb;
+        private final int paddingFrames;
+        private final int maxSilenceFrames;
+        private final List<float[]> silenceHead = new ArrayList<>();
+        private final Deque<float[]> silenceTail = new ArrayDeque<>();
+        private final int tailCapacity;
+        private int filled;
+        private int silentFrames;
+        private double noiseFloorDb;
+        private boolean heardSpeech;
+
+        SilenceTrimmer(SampleSink sink, int frameSamples, double minLevelDb, double marginDb,
+                       int paddingFrames, int maxSilenceFrames) {
+            this.sink = sink;
+            this.frame = new float[frameSamples];
+            this.minLevelDb = minLevelDb;
+            this.marginDb = marginDb;
+            this.paddingFrames = paddingFrames;
+            this.maxSilenceFrames = Math.max(maxSilenceFrames, 2 * paddingFrames);
+            this.tailCapacity = Math.max(paddingFrames, this.maxSilenceFrames / 2);
+            // Start at the absolute floor, so audio that opens with speech is not taken as noise
+            this.noiseFloorDb = minLevelDb;
+        }
+
+        void accept(float sample) throws IOException {
+            frame[filled++] = sample;
+            if (filled == frame.length) {
+                process(frame, filled);
+                filled = 0;
+            }
+        }
+
+        void finish() throws IOException {
+            if (filled > 0) {
+                process(frame, filled);
+                filled = 0;
+            }
+            if (heardSpeech) {
+                // Trailing silence: keep only the padding after the last speech
+                for (int i = 0; i < Math.min(paddingFrames, silenceHead.size()); i++) {
+                    write(silenceHead.get(i));
+                }
+            }
+        }
+
+        boolean heardSpeech() {
+            return heardSpeech;
+        }
+
+        private void process(float[] samples, int count) throws IOException {
+            double energy = 0;
+            for (int i = 0; i < count; i++) {
+                energy += samples[i] * samples[i];
+            }
+            double levelDb = 10 * Math.log10(energy / count + 1e-12);
+            boolean speech = levelDb > minLevelDb && levelDb > noiseFloorDb + marginDb;
+            noiseFloorDb = levelDb < noiseFloorDb ? levelDb : noiseFloorDb + FLOOR_RISE_DB_PER_FRAME;
+
+            float[] copy = Arrays.copyOf(samples, count);
+            if (!speech) {
+                silentFrames++;
+                if (silenceHead.size() < maxSilenceFrames) {
+                    silenceHead.add(copy);
+                }
+                silenceTail.addLast(copy);
+                if (silenceTail.size() > tailCapacity) {
+                    silenceTail.removeFirst();
+                }
+                return;
+            }
+            if (!heardSpeech) {
+                // Leading silence: keep only the padding before the first speech
+                writeLast(Math.min(paddingFrames, silentFrames));
+            } else if (silentFrames <= maxSilenceFrames) {
+                for (float[] silent : silenceHead) {
+                    write(silent);
+                }
+            } else {
+                int half = maxSilenceFrames / 2;
+                for (int i = 0; i < half; i++) {
+                    write(silenceHead.get(i));
+                }
+                writeLast(half);
+            }
+            silenceHead.clear();
+            silenceTail.clear();
+            silentFrames = 0;
+            heardSpeech = true;
+            write(copy);
+        }
+
+        private void writeLast(int frames) throws IOException {
+            int skip = silenceTail.size() - frames;
+            for (float[] silent : silenceTail) {
+                if (skip-- <= 0) {
+                    write(silent);
+                }
+            }
+        }
+
+        private void write(float[] samples) throws IOException {
+            for (float sample : samples) {
+                sink.accept(sample);
+            }
+        }
+    }
+
+    /**
+     * Writes 16-bit mono PCM at {@link #SAMPLE_RATE} as a WAV file, filling in the sizes in
+     * the header once the length is known.
+     */
+    static final class WavWriter implements SampleSink, AutoCloseable {
+
+        private final File file;
+        private final OutputStream out;
+        private long samples;
+
+        WavWriter(File file) throws IOException {
+            this.file = file;
+            this.out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), 64 * 1024);
+            out.write(wavHeader(0));
+        }
+
+        @Override
+        public void accept(float sample) throws IOException {
+            int value = Math.round(Math.max(-1f, Math.min(1f, sample)) * 32767f);
+            out.write(value & 0xFF);
+            out.write((value >> 8) & 0xFF);
+            samples++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            try (RandomAccessFile header = new RandomAccessFile(file, "rw")) {
+                header.write(wavHeader(samples * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.echotype;
+
+import jakarta.servlet.ServletException;
+import org.apache.catalina.AccessLog;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Counts what {@code server.compression} saves. Tomcat gzips below the servlet layer, so this
+ * hooks in as an access log valve, which runs once the response is complete and can compare
+ * the bytes the application wrote with the bytes that went out.
+ */
+@Component
+public class CompressionMetrics implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Override
+    public void customize(TomcatServletWebServerFactory factory) {
+        factory.addEngineValves(new SavingsValve());
+    }
+
+    private final class SavingsValve extends ValveBase implements AccessLog {
+
+        SavingsValve() {
+            super(true);
+        }
+
+        @Override
+        public void invoke(Request request, Response response) throws IOException, ServletException {
+            getNext().invoke(request, response);
+        }
+
+        @Override
+        public void log(Request request, Response response, long time) {
+            if (!"gzip".equals(response.getHeader("Content-Encoding"))) {
+                return;
+            }
+            long saved = response.getCoyoteResponse().getContentWritten() - response.getBytesWritten(false);
+            if (saved > 0) {
+                metrics.bytesSaved("compression", saved);
+            }
+        }
+
+        @Override
+        public void setRequestAttributesEnabled(boolean requestAttributesEnabled) {
+        }
+
+        @Override
+        public boolean getRequestAttributesEnabled() {
+            return false;
+        }
+    }
+}
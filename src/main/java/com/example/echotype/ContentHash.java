@@ -0,0 +1,94 @@
+package com.example.echotype;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 keys for content-addressed lookups.
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+    }
+
+    public static String of(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hashes several strings as one value. Each part is length-prefixed so that
+     * ("ab", "c") and ("a", "bc") produce different keys; null and "" hash the same.
+     */
+    public static String of(String... parts) {
+        MessageDigest digest = newDigest();
+        for (String part : parts) {
+            byte[] bytes = part == null ? new byte[0] : part.getBytes(StandardCharsets.UTF_8);
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+            digest.update(bytes);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hashes a stream while it is read, for content that is never stored as a file. After the
+     * stream is exhausted {@link #key()} equals {@link ContentHash#of(File)} for the same bytes.
+     */
+    public static final class HashingInputStream extends DigestInputStream {
+
+        private long bytesRead;
+
+        public HashingInputStream(InputStream in) {
+            super(in, newDigest());
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                bytesRead += read;
+            }
+            return read;
+        }
+
+        public String key() {
+            return HexFormat.of().formatHex(getMessageDigest().digest());
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
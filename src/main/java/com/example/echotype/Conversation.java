@@ -1,15 +1,21 @@
 package com.example.echotype;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Column;
 
+import java.time.Instant;
+
 @Entity
 public class Conversation {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled ids instead of IDENTITY so Hibernate can batch inserts; see V4 migration
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "conversation_id_seq")
+    @SequenceGenerator(name = "conversation_id_seq", sequenceName = "conversation_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(columnDefinition = "TEXT")
@@ -23,8 +29,8 @@ public class Conversation {
     @Column(columnDefinition = "TEXT")
     private String sender;
 
-    @Column(columnDefinition = "TEXT")
-    private String timestamp;
+    @JsonDeserialize(using = LenientInstantDeserializer.class)
+    private Instant timestamp;
 
     private Boolean pinned;
 
@@ -39,8 +45,8 @@ public class Conversation {
     public void setMessageText(String messageText) { this.messageText = messageText; }
     public String getSender() { return sender; }
     public void setSender(String sender) { this.sender = sender; }
-    public String getTimestamp() { return timestamp; }
-    public void setTimestamp(String timestamp) { this.timestamp = timestamp; }
+    public Instant getTimestamp() { return timestamp; }
+    public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
     public Boolean getPinned() { return pinned; }
     public void setPinned(Boolean pinned) { this.pinned = pinned; }
 }
@@ -0,0 +1,156 @@
+package com.example.echotype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Builds the conversation context sent to the formatter from stored messages. Each
+ * conversation keeps, per user, a rolling window of the user's last {@code max-messages}
+ * messages in it, cut to {@code max-chars} characters, in the same "Sender: Message" lines
+ * clients used to send. Windows are loaded on first use in timestamp order and appended to as
+ * messages are saved; a message older than the newest one in the window, as from an offline
+ * batch, drops the window so it is reloaded in order. Windows are dropped when the
+ * conversation is deleted and expire after {@code ttl-seconds}, since writes through other
+ * instances are not seen; the least recently used ones go beyond {@code max-conversations}.
+ */
+@Component
+public class ConversationContextCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationContextCache.class);
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Value("${echotype.context.max-messages:20}")
+    private int maxMessages;
+
+    @Value("${echotype.context.max-chars:4000}")
+    private int maxChars;
+
+    @Value("${echotype.context.max-conversations:1000}")
+    private int maxConversations;
+
+    @Value("${echotype.context.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private final LinkedHashMap<Key, Window> windows = new LinkedHashMap<>(256, 0.75f, true);
+    // Bumped on every append and eviction, so a window loaded concurrently is not stored stale
+    private long generation;
+
+    private record Key(Long userId, String conversationId) {
+    }
+
+    private static final class Window {
+        final Deque<String> lines = new ArrayDeque<>();
+        final long loadedAt = System.nanoTime();
+        Instant newest;
+        int chars;
+    }
+
+    /**
+     * Returns the bounded context for the user's messages in a conversation. When nothing is
+     * stored for it yet, falls back to the tail of the history the client sent, if any.
+     */
+    public String contextFor(Long userId, String conversationId, String clientHistory) {
+        String context = conversationId == null || userId == null ? "" : windowFor(userId, conversationId);
+        if (context.isEmpty() && clientHistory != null) {
+            String history = clientHistory.strip();
+            return history.length() > maxChars ? history.substring(history.length() - maxChars) : history;
+        }
+        return context;
+    }
+
+    public void append(Conversation message) {
+        if (message.getConversationId() == null || message.getUserId() == null) {
+            return;
+        }
+        synchronized (windows) {
+            generation++;
+            Key key = new Key(message.getUserId(), message.getConversationId());
+            Window window = live(key);
+            if (window != null && isOlder(message, window)) {
+                windows.remove(key);
+            } else if (window != null) {
+                add(window, message);
+            }
+        }
+    }
+
+    public void evict(String conversationId) {
+        synchronized (windows) {
+            generation++;
+            windows.keySet().removeIf(key -> key.conversationId().equals(conversationId));
+        }
+    }
+
+    private String windowFor(Long userId, String conversationId) {
+        Key key = new Key(userId, conversationId);
+        long loadedAt;
+        synchronized (windows) {
+            Window window = live(key);
+            if (window != null) {
+                return String.join("\n", window.lines);
+            }
+            loadedAt = generation;
+        }
+
+        List<Conversation> latest = conversationRepository.findByConversationIdAndUserIdOrderByTimestampDescIdDesc(
+                conversationId, userId, Limit.of(maxMessages));
+        Window window = new Window();
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            add(window, latest.get(i));
+        }
+        logger.debug("Loaded context window for conversationId: {}, {} messages", conversationId, window.lines.size());
+
+        String context = String.join("\n", window.lines);
+        synchronized (windows) {
+            if (generation == loadedAt && !window.lines.isEmpty()) {
+                windows.put(key, window);
+                var eldest = windows.entrySet().iterator();
+                while (windows.size() > maxConversations && eldest.hasNext()) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return context;
+    }
+
+    private static boolean isOlder(Conversation message, Window window) {
+        return message.getTimestamp() != null && window.newest != null && message.getTimestamp().isBefore(window.newest);
+    }
+
+    private Window live(Key key) {
+        Window window = windows.get(key);
+        if (window != null && System.nanoTime() - window.loadedAt >= ttlSeconds * 1_000_000_000L) {
+            windows.remove(key);
+            return null;
+        }
+        return window;
+    }
+
+    private void add(Window window, Conversation message) {
+        String line = message.getSender() + ": " + message.getMessageText();
+        if (line.length() > maxChars) {
+            line = line.substring(line.length() - maxChars);
+        }
+        window.lines.addLast(line);
+        window.chars += line.length();
+        if (message.getTimestamp() != null && (window.newest == null || message.getTimestamp().isAfter(window.newest))) {
+            window.newest = message.getTimestamp();
+        }
+        while (window.lines.size() > maxMessages || window.chars > maxChars) {
+            window.chars -= window.lines.removeFirst().length();
+        }
+    }
+}
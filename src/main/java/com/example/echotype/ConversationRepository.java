@@ -1,10 +1,30 @@
 package com.example.echotype;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.Instant;
 import java.util.List;
 
 public interface ConversationRepository extends JpaRepository<Conversation, Long> {
     List<Conversation> findByUserId(Long userId);
+    List<Conversation> findByUserIdOrderByIdAsc(Long userId, Limit limit);
+    List<Conversation> findByUserIdAndIdGreaterThanOrderByIdAsc(Long userId, Long id, Limit limit);
     List<Conversation> findByConversationId(String conversationId);
-    void deleteByConversationId(String conversationId);
+    List<Conversation> findByConversationIdAndUserIdOrderByTimestampDescIdDesc(String conversationId, Long userId, Limit limit);
+    List<Conversation> findByUserIdAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestampAsc(Long userId, Instant from, Instant to, Limit limit);
+    List<Conversation> findByConversationIdAndUserIdAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestampAsc(String conversationId, Long userId, Instant from, Instant to, Limit limit);
+
+    // One DELETE statement instead of loading and removing every message. It returns each owner
+    // of the removed rows once, which callers need to invalidate cached lists; no rows means not found
+    @Transactional
+    @Query(value = """
+            WITH deleted AS (
+                DELETE FROM conversation WHERE conversation_id = :conversationId RETURNING user_id
+            )
+            SELECT DISTINCT user_id FROM deleted
+            """, nativeQuery = true)
+    List<Long> deleteByConversationIdReturningUserIds(@Param("conversationId") String conversationId);
 }
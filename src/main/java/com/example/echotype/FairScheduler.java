@@ -0,0 +1,307 @@
+package com.example.echotype;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control in front of the transcription and formatting pipeline. At most
+ * {@code max-concurrent} requests run at once; by default that is the number of cores, lowered
+ * if the machine's memory cannot hold one {@code memory-per-task-mb} worker per core. It never
+ * exceeds the transcribe worker pool size, so an admitted request always finds a worker free
+ * and this is the only queue requests wait in: past it, they would queue again for a worker,
+ * unfairly and against the borrow timeout. When all
+ * slots are busy, a freed slot goes to the waiting user with the fewest requests running (ties
+ * in round-robin order), so one user's bulk upload cannot starve everyone else. Each user also
+ * has a token bucket of {@code burst} requests refilled at {@code rate-per-minute}.
+ */
+@Component
+public class FairScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FairScheduler.class);
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${echotype.scheduler.max-concurrent:0}")
+    private int configuredMaxConcurrent;
+
+    @Value("${echotype.worker.transcribe.pool-size:1}")
+    private int transcribePoolSize;
+
+    @Value("${echotype.scheduler.memory-per-task-mb:1024}")
+    private long memoryPerTaskMb;
+
+    @Value("${echotype.scheduler.rate-per-minute:30}")
+    private double ratePerMinute;
+
+    @Value("${echotype.scheduler.burst:10}")
+    private double burst;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, UserState> users = new HashMap<>();
+    // Users with at least one request waiting, in round-robin order
+    private final LinkedHashSet<Long> waitingUsers = new LinkedHashSet<>();
+    private int maxConcurrent;
+    private int running;
+    private int queued;
+
+    private static final class UserState {
+        final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+        double tokens;
+        long refilledAt;
+        int running;
+
+        UserState(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+    }
+
+    private static final class Ticket {
+        final CompletableFuture<Void> granted = new CompletableFuture<>();
+    }
+
+    /**
+     * A running slot; closing it hands the slot to the next waiting request.
+     */
+    public final class Permit implements AutoCloseable {
+        private final Long userId;
+        private final long queueWaitMs;
+        private boolean released;
+
+        private Permit(Long userId, long queueWaitMs) {
+            this.userId = userId;
+            this.queueWaitMs = queueWaitMs;
+        }
+
+        public long getQueueWaitMs() {
+            return queueWaitMs;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(userId);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (configuredMaxConcurrent > 0) {
+            maxConcurrent = configuredMaxConcurrent;
+        } else {
+            int cores = Runtime.getRuntime().availableProcessors();
+            long totalMb = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                    .getTotalMemorySize() / (1024 * 1024);
+            maxConcurrent = (int) Math.max(1, Math.min(cores, totalMb / memoryPerTaskMb));
+            logger.info("Running at most {} pipeline requests at once ({} cores, {} MB memory)", maxConcurrent, cores, totalMb);
+        }
+        if (maxConcurrent > transcribePoolSize) {
+            logger.info("Limiting pipeline requests to the {} transcribe workers instead of {}", transcribePoolSize, maxConcurrent);
+            maxConcurrent = Math.max(1, transcribePoolSize);
+        }
+        metrics.gauge("echotype.scheduler.running", this::getRunning);
+        metrics.gauge("echotype.scheduler.queued", this::getQueued);
+    }
+
+    /**
+     * Takes one request from the user's token bucket.
+     *
+     * @throws SchedulerRejectedException if the user is over their rate limit
+     */
+    public void admit(Long userId) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            UserState user = users.computeIfAbsent(userId, id -> new UserState(burst, now));
+            double perSecond = ratePerMinute / 60;
+            user.tokens = Math.min(burst, user.tokens + (now - user.refilledAt) / 1e9 * perSecond);
+            user.refilledAt = now;
+            if (user.tokens < 1) {
+                metrics.schedulerRejected("rate_limit");
+                long retryAfter = (long) Math.ceil((1 - user.tokens) / perSecond);
+                throw new SchedulerRejectedException("Too many requests, retry in " + retryAfter + " s", retryAfter);
+            }
+            user.tokens -= 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a running slot.
+     *
+     * @param maxWait how long to wait before giving up, or null to wait as long as it takes
+     * @throws SchedulerRejectedException if no slot came free within {@code maxWait}
+     */
+    public Permit acquire(Long userId, Duration maxWait) throws InterruptedException {
+        long start = System.nanoTime();
+        Ticket ticket = new Ticket();
+        lock.lock();
+        try {
+            UserState user = users.computeIfAbsent(userId, id -> new UserState(burst, start));
+            if (running < maxConcurrent && waitingUsers.isEmpty()) {
+                running++;
+                user.running++;
+                return new Permit(userId, 0);
+            }
+            user.queue.addLast(ticket);
+            waitingUsers.add(userId);
+            queued++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (maxWait == null) {
+                ticket.granted.get();
+            } else {
+                ticket.granted.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException | InterruptedException e) {
+            if (!withdraw(userId, ticket)) {
+                // Granted just as we gave up, so hand the slot on
+                release(userId);
+            }
+            if (e instanceof InterruptedException interrupted) {
+                throw interrupted;
+            }
+            metrics.schedulerRejected("timeout");
+            throw new SchedulerRejectedException("Server busy, no slot free within " + maxWait.toSeconds() + " s", 30);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Slot grant failed", e.getCause());
+        }
+        Duration waited = Duration.ofNanos(System.nanoTime() - start);
+        metrics.record("queue", waited);
+        return new Permit(userId, waited.toMillis());
+    }
+
+    /**
+     * Takes a running slot only if one is free and no request is waiting for it, for extra work
+     * that could just as well run later on a slot the caller already holds.
+     *
+     * @return the slot, or null if there is none to spare
+     */
+    public Permit tryAcquire(Long userId) {
+        lock.lock();
+        try {
+            if (running >= maxConcurrent || !waitingUsers.isEmpty()) {
+                return null;
+            }
+            UserState user = users.computeIfAbsent(userId, id -> new UserState(burst, System.nanoTime()));
+            running++;
+            user.running++;
+            return new Permit(userId, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets users with nothing running or waiting whose bucket has refilled.
+     */
+    @Scheduled(fixedDelayString = "${echotype.scheduler.cleanup-interval-ms:60000}")
+    public void evictIdle() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            double perSecond = ratePerMinute / 60;
+            users.values().removeIf(user -> user.running == 0 && user.queue.isEmpty()
+                    && user.tokens + (now - user.refilledAt) / 1e9 * perSecond >= burst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Long userId) {
+        lock.lock();
+        try {
+            running--;
+            users.get(userId).running--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the ticket was still waiting and has been removed, false if it was granted
+     */
+    private boolean withdraw(Long userId, Ticket ticket) {
+        lock.lock();
+        try {
+            UserState user = users.get(userId);
+            if (!user.queue.remove(ticket)) {
+                return false;
+            }
+            queued--;
+            if (user.queue.isEmpty()) {
+                waitingUsers.remove(userId);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch() {
+        while (running < maxConcurrent && !waitingUsers.isEmpty()) {
+            Long next = null;
+            int fewest = Integer.MAX_VALUE;
+            for (Long userId : waitingUsers) {
+                int userRunning = users.get(userId).running;
+                if (userRunning < fewest) {
+                    fewest = userRunning;
+                    next = userId;
+                }
+            }
+            UserState user = users.get(next);
+            Ticket ticket = user.queue.pollFirst();
+            // Move the user to the back of the round-robin order, or drop them if nothing is left
+            waitingUsers.remove(next);
+            if (!user.queue.isEmpty()) {
+                waitingUsers.add(next);
+            }
+            queued--;
+            running++;
+            user.running++;
+            ticket.granted.complete(null);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.echotype;
+
+public class JobRejectedException extends RuntimeException {
+    public JobRejectedException(String message) {
+        super(message);
+    }
+}
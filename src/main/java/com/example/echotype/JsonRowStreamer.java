@@ -0,0 +1,115 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+
+/**
+ * Writes a user's notes or conversation messages as a JSON array straight from a JDBC
+ * cursor. Rows are never collected into a list, so memory stays flat however much history a
+ * user has. The JSON matches what Jackson produces for {@link Note} and {@link Conversation}.
+ */
+@Component
+public class JsonRowStreamer {
+
+    private static final int FLUSH_EVERY_ROWS = 100;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${echotype.streaming.fetch-size:500}")
+    private int fetchSize;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnlyTransaction;
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ResultSet rs, JsonGenerator json) throws SQLException, IOException;
+    }
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        // PostgreSQL only uses a server-side cursor inside a transaction
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    public void streamNotes(Long userId, OutputStream out) throws IOException {
+        stream(out, "SELECT id, title, content, user_id, timestamp, is_synced, is_deleted, sync_version FROM note WHERE user_id = ? AND is_deleted = false ORDER BY id",
+                userId, (rs, json) -> {
+                    json.writeStartObject();
+                    json.writeStringField("id", rs.getString("id"));
+                    json.writeStringField("title", rs.getString("title"));
+                    json.writeStringField("content", rs.getString("content"));
+                    json.writeObjectField("userId", rs.getObject("user_id", Long.class));
+                    writeTimestamp(json, rs.getObject("timestamp", OffsetDateTime.class));
+                    json.writeObjectField("isSynced", rs.getObject("is_synced", Boolean.class));
+                    json.writeObjectField("isDeleted", rs.getObject("is_deleted", Boolean.class));
+                    json.writeObjectField("syncVersion", rs.getObject("sync_version", Long.class));
+                    json.writeEndObject();
+                });
+    }
+
+    public void streamConversations(Long userId, OutputStream out) throws IOException {
+        stream(out, "SELECT id, conversation_id, user_id, message_text, sender, timestamp, pinned FROM conversation WHERE user_id = ? ORDER BY id",
+                userId, (rs, json) -> {
+                    json.writeStartObject();
+                    json.writeObjectField("id", rs.getObject("id", Long.class));
+                    json.writeStringField("conversationId", rs.getString("conversation_id"));
+                    json.writeObjectField("userId", rs.getObject("user_id", Long.class));
+                    json.writeStringField("messageText", rs.getString("message_text"));
+                    json.writeStringField("sender", rs.getString("sender"));
+                    writeTimestamp(json, rs.getObject("timestamp", OffsetDateTime.class));
+                    json.writeObjectField("pinned", rs.getObject("pinned", Boolean.class));
+                    json.writeEndObject();
+                });
+    }
+
+    private static void writeTimestamp(JsonGenerator json, OffsetDateTime timestamp) throws IOException {
+        // Same ISO-8601 instant form Jackson writes for the entities' Instant fields
+        json.writeStringField("timestamp", timestamp == null ? null : timestamp.toInstant().toString());
+    }
+
+    private void stream(OutputStream out, String sql, Long userId, RowWriter rowWriter) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartArray();
+            int[] rows = new int[1];
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(sql, rs -> {
+                try {
+                    rowWriter.write(rs, json);
+                    if (++rows[0] % FLUSH_EVERY_ROWS == 0) {
+                        json.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, userId));
+            json.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
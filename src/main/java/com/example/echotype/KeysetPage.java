@@ -0,0 +1,10 @@
+package com.example.echotype;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated list. Pass {@code nextCursor} as {@code after} to fetch the
+ * following page; it is null on the last page.
+ */
+public record KeysetPage<T>(List<T> items, String nextCursor) {
+}
@@ -0,0 +1,56 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Reads the timestamps clients have always sent as free-form strings: ISO-8601 instants or
+ * offset date-times, local date-times without a zone (taken as UTC) and epoch milliseconds.
+ */
+public class LenientInstantDeserializer extends StdDeserializer<Instant> {
+
+    public LenientInstantDeserializer() {
+        super(Instant.class);
+    }
+
+    @Override
+    public Instant deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return Instant.ofEpochMilli(parser.getLongValue());
+        }
+        String text = parser.getValueAsString();
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        Instant instant = parse(text.strip());
+        if (instant == null) {
+            return (Instant) context.handleWeirdStringValue(Instant.class, text, "not a recognised timestamp");
+        }
+        return instant;
+    }
+
+    static Instant parse(String text) {
+        if (text.chars().allMatch(Character::isDigit)) {
+            return Instant.ofEpochMilli(Long.parseLong(text));
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeParseException e) {
+            // no offset, try a local date-time
+        }
+        try {
+            return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
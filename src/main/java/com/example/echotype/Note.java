@@ -1,9 +1,12 @@
 package com.example.echotype;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Column;
 
+import java.time.Instant;
+
 @Entity
 public class Note {
     @Id
@@ -18,13 +21,17 @@ public class Note {
 
     private Long userId;
 
-    @Column(columnDefinition = "TEXT")
-    private String timestamp;
+    @JsonDeserialize(using = LenientInstantDeserializer.class)
+    private Instant timestamp;
 
     private Boolean isSynced;
 
     private Boolean isDeleted;
 
+    // Assigned by the database on every insert and update, see NoteSyncService
+    @Column(insertable = false, updatable = false)
+    private Long syncVersion;
+
     // Getters and Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -34,10 +41,12 @@ public class Note {
     public void setContent(String content) { this.content = content; }
     public Long getUserId() { return userId; }
     public void setUserId(Long userId) { this.userId = userId; }
-    public String getTimestamp() { return timestamp; }
-    public void setTimestamp(String timestamp) { this.timestamp = timestamp; }
+    public Instant getTimestamp() { return timestamp; }
+    public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
     public Boolean getIsSynced() { return isSynced; }
     public void setIsSynced(Boolean isSynced) { this.isSynced = isSynced; }
     public Boolean getIsDeleted() { return isDeleted; }
     public void setIsDeleted(Boolean isDeleted) { this.isDeleted = isDeleted; }
+    public Long getSyncVersion() { return syncVersion; }
+    public void setSyncVersion(Long syncVersion) { this.syncVersion = syncVersion; }
 }
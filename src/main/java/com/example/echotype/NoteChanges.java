@@ -0,0 +1,12 @@
+package com.example.echotype;
+
+import java.util.List;
+
+/**
+ * Notes changed after a sync version, tombstones included. {@code version} is the value to
+ * send as {@code since} next time; when {@code hasMore} is set the client should ask again
+ * straight away. {@code resyncRequired} means tombstones the client has not seen yet were
+ * purged, so it should discard its copy and sync again from {@code since=0}.
+ */
+public record NoteChanges(List<Note> notes, Long version, boolean hasMore, boolean resyncRequired) {
+}
@@ -2,23 +2,36 @@ package com.example.echotype;
 
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 
 @RestController
 @CrossOrigin(origins = "*")
 public class NoteController {
 
     private static final Logger logger = LoggerFactory.getLogger(NoteController.class);
+    private static final Duration DEFAULT_RANGE = Duration.ofDays(7);
 
     @Autowired
     private NoteRepository noteRepository;
@@ -26,307 +39,247 @@ public class NoteController {
     @Autowired
     private ConversationRepository conversationRepository;
 
-    private File extractScriptFromClasspath(String scriptName) throws IOException {
-        logger.info("Extracting script: {}", scriptName);
-        ClassPathResource resource = new ClassPathResource("scripts/" + scriptName);
-        if (!resource.exists()) {
-            throw new IOException("Script not found in classpath: " + scriptName);
-        }
-        File tempScript = File.createTempFile(scriptName.replace(".py", ""), ".py");
-        try (InputStream inputStream = resource.getInputStream()) {
-            Files.copy(inputStream, tempScript.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-        }
-        logger.info("Script extracted to: {}", tempScript.getAbsolutePath());
-        return tempScript;
-    }
+    @Autowired
+    private NotePipeline notePipeline;
+
+    @Autowired
+    private TranscriptionJobService transcriptionJobService;
+
+    @Autowired
+    private StreamingTranscriptionService streamingTranscriptionService;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Autowired
+    private JsonRowStreamer jsonRowStreamer;
+
+    @Autowired
+    private NoteSyncService noteSyncService;
+
+    @Autowired
+    private ConversationContextCache conversationContext;
+
+    @Autowired
+    private UserListCache userListCache;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Autowired
+    private SearchService searchService;
+
+    @Autowired
+    private FairScheduler fairScheduler;
+
+    @Value("${echotype.sync.max-batch:1000}")
+    private int maxSyncBatch;
+
+    @Value("${echotype.conversations.max-batch:1000}")
+    private int maxConversationBatch;
+
+    @Value("${echotype.pagination.default-page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${echotype.pagination.max-page-size:500}")
+    private int maxPageSize;
+
+    @Value("${echotype.scheduler.max-wait-seconds:300}")
+    private long maxQueueWaitSeconds;
+
+    @Value("${echotype.search.default-page-size:20}")
+    private int defaultSearchPageSize;
 
     @PostMapping("/transcribe")
-    public Map<String, String> transcribeAudio(
+    public ResponseEntity<Map<String, String>> transcribeAudio(
+            @RequestParam("audio") MultipartFile audioFile,
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "conversationHistory", required = false) String conversationHistory,
+            @RequestParam("conversationId") String conversationId) {
+        logger.info("Received /transcribe request with file: {}, userId: {}, conversationId: {}", audioFile.getOriginalFilename(), userId, conversationId);
+        return scheduled(userId, () -> {
+            File tempFile = null;
+            try {
+                tempFile = spoolAudio(audioFile);
+                return notePipeline.transcribeAndFormat(tempFile, userId, conversationHistory, conversationId);
+            } catch (IOException e) {
+                logger.error("Error processing audio: {}", e.getMessage(), e);
+                Map<String, String> response = new HashMap<>();
+                response.put("error", "Failed to process audio: " + e.getMessage());
+                return response;
+            } finally {
+                deleteTempFile(tempFile);
+            }
+        });
+    }
+
+    /**
+     * Same result as {@code /transcribe}, but the request body is the raw audio and is piped
+     * to the transcription worker as it arrives, so it never touches the disk. Formats that
+     * need a seekable file (MP4/M4A with the index at the end) must use {@code /transcribe}.
+     */
+    @PostMapping(value = "/transcribe/raw", consumes = {"audio/*", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<Map<String, String>> transcribeAudioStream(
+            InputStream audio,
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "conversationHistory", required = false) String conversationHistory,
+            @RequestParam("conversationId") String conversationId) {
+        logger.info("Received /transcribe/raw request, userId: {}, conversationId: {}", userId, conversationId);
+        return scheduled(userId, () -> notePipeline.transcribeAndFormat(audio, userId, conversationHistory, conversationId));
+    }
+
+    @PostMapping("/transcribe/jobs")
+    public ResponseEntity<Map<String, String>> submitTranscriptionJob(
             @RequestParam("audio") MultipartFile audioFile,
             @RequestParam("userId") Long userId,
-            @RequestParam("conversationHistory") String conversationHistory,
+            @RequestParam(value = "conversationHistory", required = false) String conversationHistory,
             @RequestParam("conversationId") String conversationId) {
         Map<String, String> response = new HashMap<>();
         File tempFile = null;
-        File tempTranscription = null;
-        File tempTranscribeScript = null;
-        File tempFormatScript = null;
-        File tempHistoryFile = null;
 
         try {
-            logger.info("Received /transcribe request with file: {}, userId: {}, conversationId: {}", audioFile.getOriginalFilename(), userId, conversationId);
-            tempFile = File.createTempFile("audio", ".wav");
-            audioFile.transferTo(tempFile);
-            logger.info("Audio file saved to: {}, size: {} bytes", tempFile.getAbsolutePath(), tempFile.length());
-
-            tempHistoryFile = File.createTempFile("history", ".txt");
-            Files.writeString(tempHistoryFile.toPath(), conversationHistory);
-            logger.info("Conversation history saved to: {}", tempHistoryFile.getAbsolutePath());
-
-            tempTranscribeScript = extractScriptFromClasspath("transcribe.py");
-            logger.info("Starting transcription process...");
-
-            ProcessBuilder whisperPb = new ProcessBuilder(
-                "F:\\backend\\.venv\\Scripts\\python.exe",
-                tempTranscribeScript.getAbsolutePath(),
-                tempFile.getAbsolutePath()
-            );
-            Process whisperProcess = whisperPb.start();
-
-            StringBuilder transcriptionOutput = new StringBuilder();
-            StringBuilder transcriptionLogs = new StringBuilder();
-            Thread stdoutThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(whisperProcess.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        if (line.matches("\\d{4}-\\d{2}-\\d{2}\\s+\\d{2}:\\d{2}:\\d{3}\\s+\\[\\w+\\].*")) {
-                            logger.info("Transcription log: {}", line);
-                            transcriptionLogs.append(line).append("\n");
-                        } else if (line.matches("\\s*\\d+%.*")) {
-                            logger.debug("Transcription progress: {}", line);
-                        } else {
-                            logger.info("Transcription result: {}", line);
-                            transcriptionOutput.append(line).append("\n");
-                        }
-                    }
-                } catch (IOException e) {
-                    logger.error("Error reading transcription stdout: {}", e.getMessage());
-                }
-            });
-            stdoutThread.start();
-
-            Thread stderrThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(whisperProcess.getErrorStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        logger.error("Transcription error: {}", line);
-                        transcriptionLogs.append(line).append("\n");
-                    }
-                } catch (IOException e) {
-                    logger.error("Error reading transcription stderr: {}", e.getMessage());
-                }
-            });
-            stderrThread.start();
-
-            boolean completed = whisperProcess.waitFor(300, TimeUnit.SECONDS);
-            stdoutThread.join();
-            stderrThread.join();
-
-            if (!completed) {
-                whisperProcess.destroy();
-                logger.error("Transcription process timed out after 5 minutes");
-                response.put("error", "Transcription timed out");
-                return response;
-            }
+            logger.info("Received /transcribe/jobs request with file: {}, userId: {}, conversationId: {}", audioFile.getOriginalFilename(), userId, conversationId);
+            fairScheduler.admit(userId);
+            tempFile = spoolAudio(audioFile);
+            TranscriptionJob job = transcriptionJobService.submit(tempFile, userId, conversationHistory, conversationId);
+            tempFile = null;
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toResponse());
+        } catch (JobRejectedException e) {
+            logger.warn("Rejected transcription job for userId {}: {}", userId, e.getMessage());
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "30").body(response);
+        } catch (SchedulerRejectedException e) {
+            return rejected(userId, e);
+        } catch (IOException e) {
+            logger.error("Error queuing audio: {}", e.getMessage(), e);
+            response.put("error", "Failed to process audio: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        } finally {
+            deleteTempFile(tempFile);
+        }
+    }
 
-            int whisperExitCode = whisperProcess.exitValue();
-            if (whisperExitCode != 0) {
-                logger.error("Transcription failed with exit code: {}, logs: {}", whisperExitCode, transcriptionLogs.toString());
-                response.put("error", "Transcription failed with code: " + whisperExitCode + ", logs: " + transcriptionLogs.toString());
-                return response;
-            }
+    @GetMapping("/transcribe/jobs/{jobId}")
+    public ResponseEntity<Map<String, String>> getTranscriptionJob(@PathVariable String jobId) {
+        return transcriptionJobService.find(jobId)
+                .map(job -> ResponseEntity.ok(job.toResponse()))
+                .orElseGet(() -> {
+                    logger.warn("Transcription job {} not found", jobId);
+                    Map<String, String> response = new HashMap<>();
+                    response.put("error", "Job not found");
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+                });
+    }
 
-            String transcription = transcriptionOutput.toString().trim();
-            logger.info("Transcription completed successfully: {}", transcription);
-
-            tempTranscription = File.createTempFile("transcription", ".txt");
-            Files.writeString(tempTranscription.toPath(), transcription);
-            logger.info("Transcription saved to: {}", tempTranscription.getAbsolutePath());
-
-            tempFormatScript = extractScriptFromClasspath("format_notes.py");
-            logger.info("Starting formatting process...");
-
-            ProcessBuilder geminiPb = new ProcessBuilder(
-                "F:\\backend\\.venv\\Scripts\\python.exe",
-                tempFormatScript.getAbsolutePath(),
-                tempTranscription.getAbsolutePath(),
-                tempHistoryFile.getAbsolutePath(),
-                conversationId
-            );
-            Process geminiProcess = geminiPb.start();
-
-            StringBuilder formattingOutput = new StringBuilder();
-            StringBuilder formattingLogs = new StringBuilder();
-            Thread formatStdoutThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(geminiProcess.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        if (line.matches("\\d{4}-\\d{2}-\\d{2}\\s+\\d{2}:\\d{2}:\\d{3}\\s+\\[\\w+\\].*")) {
-                            logger.info("Formatting log: {}", line);
-                            formattingLogs.append(line).append("\n");
-                        } else {
-                            logger.info("Formatting result: {}", line);
-                            formattingOutput.append(line).append("\n");
-                        }
-                    }
-                } catch (IOException e) {
-                    logger.error("Error reading formatting stdout: {}", e.getMessage());
-                }
-            });
-            formatStdoutThread.start();
-
-            Thread formatStderrThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(geminiProcess.getErrorStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        logger.error("Formatting error: {}", line);
-                        formattingLogs.append(line).append("\n");
-                    }
-                } catch (IOException e) {
-                    logger.error("Error reading formatting stderr: {}", e.getMessage());
-                }
-            });
-            formatStderrThread.start();
-
-            completed = geminiProcess.waitFor(120, TimeUnit.SECONDS);
-            formatStdoutThread.join();
-            formatStderrThread.join();
-
-            if (!completed) {
-                geminiProcess.destroy();
-                logger.error("Formatting process timed out after 2 minutes");
-                response.put("error", "Formatting timed out");
-                return response;
-            }
+    @GetMapping(value = "/transcribe/jobs/{jobId}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTranscriptionJobProgress(@PathVariable String jobId) {
+        return transcriptionJobService.find(jobId)
+                .map(job -> ResponseEntity.ok(transcriptionJobService.subscribe(job)))
+                .orElseGet(() -> {
+                    logger.warn("Transcription job {} not found", jobId);
+                    return ResponseEntity.notFound().build();
+                });
+    }
 
-            int geminiExitCode = geminiProcess.exitValue();
-            if (geminiExitCode != 0) {
-                logger.error("Formatting failed with exit code: {}, logs: {}", geminiExitCode, formattingLogs.toString());
-                response.put("error", "Formatting failed with code: " + geminiExitCode + ", logs: " + formattingLogs.toString());
-                return response;
-            }
+    @PostMapping("/transcribe/stream")
+    public ResponseEntity<Map<String, String>> openTranscriptionStream(
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "conversationHistory", required = false) String conversationHistory,
+            @RequestParam("conversationId") String conversationId) {
+        try {
+            fairScheduler.admit(userId);
+        } catch (SchedulerRejectedException e) {
+            return rejected(userId, e);
+        }
+        StreamingSession session = streamingTranscriptionService.open(userId, conversationHistory, conversationId);
+        Map<String, String> response = new HashMap<>();
+        response.put("sessionId", session.getId());
+        return ResponseEntity.ok(response);
+    }
 
-            String formattedNotes = formattingOutput.toString().trim();
-            logger.info("Formatting completed successfully: {}", formattedNotes);
+    @GetMapping(value = "/transcribe/stream/{sessionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTranscriptionEvents(@PathVariable String sessionId) {
+        return streamingTranscriptionService.find(sessionId)
+                .map(session -> ResponseEntity.ok(streamingTranscriptionService.subscribe(session)))
+                .orElseGet(() -> {
+                    logger.warn("Streaming session {} not found", sessionId);
+                    return ResponseEntity.notFound().build();
+                });
+    }
 
-            response.put("transcription", transcription.isEmpty() ? "No transcription generated" : transcription);
-            response.put("formattedNotes", formattedNotes.isEmpty() ? formattingLogs.toString().trim() : formattedNotes);
-            return response;
+    @PostMapping("/transcribe/stream/{sessionId}/chunks")
+    public ResponseEntity<Map<String, String>> uploadTranscriptionChunk(
+            @PathVariable String sessionId,
+            @RequestParam("audio") MultipartFile audioChunk) {
+        Map<String, String> response = new HashMap<>();
+        StreamingSession session = streamingTranscriptionService.find(sessionId).orElse(null);
+        if (session == null) {
+            logger.warn("Streaming session {} not found", sessionId);
+            response.put("error", "Session not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
 
-        } catch (IOException | InterruptedException e) {
-            logger.error("Error processing audio: {}", e.getMessage(), e);
+        File tempFile = null;
+        try {
+            // Not rate limited: the session was admitted when it opened, and a live recording
+            // sends chunks faster than the bucket refills
+            tempFile = spoolAudio(audioChunk);
+            int chunk = streamingTranscriptionService.addChunk(session, tempFile);
+            tempFile = null;
+            response.put("sessionId", sessionId);
+            response.put("chunk", String.valueOf(chunk));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (IllegalStateException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (IOException e) {
+            logger.error("Error queuing audio chunk: {}", e.getMessage(), e);
             response.put("error", "Failed to process audio: " + e.getMessage());
-            return response;
+            return ResponseEntity.internalServerError().body(response);
         } finally {
             deleteTempFile(tempFile);
-            deleteTempFile(tempTranscription);
-            deleteTempFile(tempTranscribeScript);
-            deleteTempFile(tempFormatScript);
-            deleteTempFile(tempHistoryFile);
         }
     }
 
-    @PostMapping("/process-text")
-    public Map<String, String> processText(@RequestBody Map<String, Object> request) {
+    @PostMapping("/transcribe/stream/{sessionId}/complete")
+    public ResponseEntity<Map<String, String>> completeTranscriptionStream(@PathVariable String sessionId) {
         Map<String, String> response = new HashMap<>();
-        File tempFile = null;
-        File tempFormatScript = null;
-        File tempHistoryFile = null;
-
+        StreamingSession session = streamingTranscriptionService.find(sessionId).orElse(null);
+        if (session == null) {
+            logger.warn("Streaming session {} not found", sessionId);
+            response.put("error", "Session not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
         try {
-            String text = (String) request.get("text");
-            Long userId = ((Number) request.get("userId")).longValue();
-            String conversationHistory = (String) request.get("conversationHistory");
-            String conversationId = (String) request.get("conversationId");
-            if (text == null || text.isEmpty()) {
-                logger.error("Text input is empty");
-                response.put("error", "Text is empty");
-                return response;
-            }
-            logger.info("Received /process-text request with text length: {}, userId: {}, conversationId: {}", text.length(), userId, conversationId);
-
-            tempFile = File.createTempFile("text", ".txt");
-            Files.writeString(tempFile.toPath(), text);
-            logger.info("Text saved to: {}", tempFile.getAbsolutePath());
-
-            tempHistoryFile = File.createTempFile("history", ".txt");
-            Files.writeString(tempHistoryFile.toPath(), conversationHistory);
-            logger.info("Conversation history saved to: {}", tempHistoryFile.getAbsolutePath());
-
-            tempFormatScript = extractScriptFromClasspath("format_notes.py");
-            logger.info("Starting text formatting process...");
-
-            ProcessBuilder geminiPb = new ProcessBuilder(
-                "F:\\backend\\.venv\\Scripts\\python.exe",
-                tempFormatScript.getAbsolutePath(),
-                tempFile.getAbsolutePath(),
-                tempHistoryFile.getAbsolutePath(),
-                conversationId
-            );
-            Process geminiProcess = geminiPb.start();
-
-            StringBuilder formattingOutput = new StringBuilder();
-            StringBuilder formattingLogs = new StringBuilder();
-            Thread formatStdoutThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(geminiProcess.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        if (line.matches("\\d{4}-\\d{2}-\\d{2}\\s+\\d{2}:\\d{2}:\\d{3}\\s+\\[\\w+\\].*")) {
-                            logger.info("Formatting log: {}", line);
-                            formattingLogs.append(line).append("\n");
-                        } else {
-                            logger.info("Formatting result: {}", line);
-                            formattingOutput.append(line).append("\n");
-                        }
-                    }
-                } catch (IOException e) {
-                    logger.error("Error reading formatting stdout: {}", e.getMessage());
-                }
-            });
-            formatStdoutThread.start();
-
-            Thread formatStderrThread = new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(geminiProcess.getErrorStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        logger.error("Formatting error: {}", line);
-                        formattingLogs.append(line).append("\n");
-                    }
-                } catch (IOException e) {
-                    logger.error("Error reading formatting stderr: {}", e.getMessage());
-                }
-            });
-            formatStderrThread.start();
-
-            boolean completed = geminiProcess.waitFor(120, TimeUnit.SECONDS);
-            formatStdoutThread.join();
-            formatStderrThread.join();
-
-            if (!completed) {
-                geminiProcess.destroy();
-                logger.error("Formatting process timed out after 2 minutes");
-                response.put("error", "Formatting timed out");
-                return response;
-            }
-
-            int geminiExitCode = geminiProcess.exitValue();
-            if (geminiExitCode != 0) {
-                logger.error("Formatting failed with exit code: {}, logs: {}", geminiExitCode, formattingLogs.toString());
-                response.put("error", "Formatting failed with code: " + geminiExitCode + ", logs: " + formattingLogs.toString());
-                return response;
-            }
-
-            String formattedNotes = formattingOutput.toString().trim();
-            logger.info("Text formatting completed successfully: {}", formattedNotes);
-
-            response.put("formattedNotes", formattedNotes.isEmpty() ? formattingLogs.toString().trim() : formattedNotes);
-            return response;
+            streamingTranscriptionService.complete(session);
+            response.put("message", "Session complete, notes will be sent on the event stream");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (IllegalStateException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
+    }
 
-        } catch (IOException | InterruptedException e) {
-            logger.error("Error processing text: {}", e.getMessage(), e);
-            response.put("error", "Failed to process text: " + e.getMessage());
-            return response;
-        } finally {
-            deleteTempFile(tempFile);
-            deleteTempFile(tempFormatScript);
-            deleteTempFile(tempHistoryFile);
+    @PostMapping("/process-text")
+    public ResponseEntity<Map<String, String>> processText(@RequestBody Map<String, Object> request) {
+        Map<String, String> response = new HashMap<>();
+        String text = (String) request.get("text");
+        Long userId = ((Number) request.get("userId")).longValue();
+        String conversationHistory = (String) request.get("conversationHistory");
+        String conversationId = (String) request.get("conversationId");
+        if (text == null || text.isEmpty()) {
+            logger.error("Text input is empty");
+            response.put("error", "Text is empty");
+            return ResponseEntity.ok(response);
         }
+        logger.info("Received /process-text request with text length: {}, userId: {}, conversationId: {}", text.length(), userId, conversationId);
+        metrics.bytesProcessed("text", text.getBytes(StandardCharsets.UTF_8).length);
+        return scheduled(userId, () -> notePipeline.formatText(text, userId, conversationHistory, conversationId));
+    }
+
+    @GetMapping("/api/cache/stats")
+    public Map<String, Long> getCacheStats() {
+        return resultCache.stats();
     }
 
     @PostMapping("/notes")
@@ -335,7 +288,7 @@ public class NoteController {
         try {
             note.setIsSynced(true);
             note.setIsDeleted(false);
-            noteRepository.save(note);
+            noteSyncService.save(note);
             logger.info("Note saved with id: {}, userId: {}", note.getId(), note.getUserId());
             response.put("message", "Note saved successfully");
             return response;
@@ -346,18 +299,92 @@ public class NoteController {
         }
     }
 
+    @PostMapping("/notes/batch")
+    public ResponseEntity<Map<String, String>> saveNotesBatch(@RequestBody List<Note> notes) {
+        Map<String, String> response = new HashMap<>();
+        if (notes.size() > maxSyncBatch) {
+            response.put("error", "Batch too large, at most " + maxSyncBatch + " notes per request");
+            return ResponseEntity.badRequest().body(response);
+        }
+        for (Note note : notes) {
+            if (note.getId() == null || note.getUserId() == null) {
+                response.put("error", "Every note needs an id and a userId");
+                return ResponseEntity.badRequest().body(response);
+            }
+        }
+        try {
+            int applied = noteSyncService.upsertBatch(notes);
+            long deleted = notes.stream().filter(note -> Boolean.TRUE.equals(note.getIsDeleted())).count();
+            logger.info("Applied note batch: {} notes, {} tombstones", applied, deleted);
+            response.put("message", "Notes saved successfully");
+            response.put("saved", String.valueOf(applied - deleted));
+            response.put("deleted", String.valueOf(deleted));
+            return ResponseEntity.ok(response);
+        } catch (DataIntegrityViolationException e) {
+            logger.error("Failed to save note batch: {}", e.getMessage());
+            response.put("error", "Failed to save notes: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @GetMapping("/notes/{userId}/changes")
+    public NoteChanges getNoteChanges(
+            @PathVariable Long userId,
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        int pageSize = pageSize(limit);
+        logger.info("Fetching note changes for userId: {}, since: {}", userId, since);
+        return noteSyncService.changesSince(userId, since, pageSize);
+    }
+
     @GetMapping("/notes/{userId}")
-    public List<Note> getNotes(@PathVariable Long userId) {
+    public ResponseEntity<List<Note>> getNotes(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.info("Fetching notes for userId: {}", userId);
-        return noteRepository.findByUserId(userId);
+        return cachedList(UserListCache.NOTES, userId, ifNoneMatch, () -> noteRepository.findByUserIdAndIsDeletedFalse(userId));
+    }
+
+    @GetMapping("/notes/{userId}/page")
+    public KeysetPage<Note> getNotesPage(
+            @PathVariable Long userId,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        int pageSize = pageSize(limit);
+        logger.info("Fetching notes page for userId: {}, after: {}, limit: {}", userId, after, pageSize);
+        Limit fetch = Limit.of(pageSize + 1);
+        List<Note> notes = after == null
+                ? noteRepository.findByUserIdAndIsDeletedFalseOrderByIdAsc(userId, fetch)
+                : noteRepository.findByUserIdAndIsDeletedFalseAndIdGreaterThanOrderByIdAsc(userId, after, fetch);
+        return toPage(notes, pageSize, Note::getId);
+    }
+
+    @GetMapping("/notes/{userId}/range")
+    public List<Note> getNotesInRange(
+            @PathVariable Long userId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(DEFAULT_RANGE);
+        logger.info("Fetching notes for userId: {} between {} and {}", userId, start, end);
+        return noteRepository.findByUserIdAndIsDeletedFalseAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestampAsc(
+                userId, start, end, Limit.of(pageSize(limit)));
+    }
+
+    @GetMapping(value = "/notes/{userId}/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamNotes(@PathVariable Long userId) {
+        logger.info("Streaming notes for userId: {}", userId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> jsonRowStreamer.streamNotes(userId, out));
     }
 
     @DeleteMapping("/notes/{id}")
     public Map<String, String> deleteNote(@PathVariable String id) {
         Map<String, String> response = new HashMap<>();
         try {
-            if (noteRepository.existsById(id)) {
-                noteRepository.deleteById(id);
+            if (noteSyncService.tombstone(id)) {
                 logger.info("Deleted note with id: {}", id);
                 response.put("message", "Note deleted successfully");
             } else {
@@ -377,6 +404,8 @@ public class NoteController {
         try {
             conversation.setPinned(conversation.getPinned() != null ? conversation.getPinned() : false);
             conversationRepository.save(conversation);
+            conversationContext.append(conversation);
+            userListCache.invalidate(UserListCache.CONVERSATIONS, List.of(conversation.getUserId()));
             logger.info("Conversation message saved with conversationId: {}, userId: {}", conversation.getConversationId(), conversation.getUserId());
             response.put("message", "Conversation saved successfully");
             return response;
@@ -387,21 +416,91 @@ public class NoteController {
         }
     }
 
+    @PostMapping("/api/conversations/batch")
+    public ResponseEntity<Map<String, String>> saveConversationBatch(@RequestBody List<Conversation> conversations) {
+        Map<String, String> response = new HashMap<>();
+        if (conversations.size() > maxConversationBatch) {
+            response.put("error", "Batch too large, at most " + maxConversationBatch + " messages per request");
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            for (Conversation conversation : conversations) {
+                conversation.setPinned(conversation.getPinned() != null ? conversation.getPinned() : false);
+            }
+            // One transaction; with hibernate.jdbc.batch_size the inserts go out as JDBC batches
+            conversationRepository.saveAll(conversations);
+            conversations.forEach(conversationContext::append);
+            userListCache.invalidate(UserListCache.CONVERSATIONS, conversations.stream().map(Conversation::getUserId).toList());
+            logger.info("Saved batch of {} conversation messages", conversations.size());
+            response.put("message", "Conversations saved successfully");
+            response.put("saved", String.valueOf(conversations.size()));
+            return ResponseEntity.ok(response);
+        } catch (DataIntegrityViolationException e) {
+            logger.error("Failed to save conversation batch: {}", e.getMessage());
+            response.put("error", "Failed to save conversations: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     @GetMapping("/api/conversations/{userId}")
-    public List<Conversation> getConversations(@PathVariable Long userId) {
+    public ResponseEntity<List<Conversation>> getConversations(
+            @PathVariable Long userId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         logger.info("Fetching conversations for userId: {}", userId);
-        return conversationRepository.findByUserId(userId);
+        return cachedList(UserListCache.CONVERSATIONS, userId, ifNoneMatch, () -> conversationRepository.findByUserId(userId));
+    }
+
+    @GetMapping("/api/conversations/{userId}/page")
+    public KeysetPage<Conversation> getConversationsPage(
+            @PathVariable Long userId,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        int pageSize = pageSize(limit);
+        logger.info("Fetching conversations page for userId: {}, after: {}, limit: {}", userId, after, pageSize);
+        Limit fetch = Limit.of(pageSize + 1);
+        List<Conversation> conversations = after == null
+                ? conversationRepository.findByUserIdOrderByIdAsc(userId, fetch)
+                : conversationRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(userId, after, fetch);
+        return toPage(conversations, pageSize, conversation -> String.valueOf(conversation.getId()));
+    }
+
+    @GetMapping("/api/conversations/{userId}/range")
+    public List<Conversation> getConversationsInRange(
+            @PathVariable Long userId,
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(DEFAULT_RANGE);
+        logger.info("Fetching conversations for userId: {}, conversationId: {} between {} and {}", userId, conversationId, start, end);
+        if (conversationId == null) {
+            return conversationRepository.findByUserIdAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestampAsc(
+                    userId, start, end, Limit.of(pageSize(limit)));
+        }
+        return conversationRepository.findByConversationIdAndUserIdAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestampAsc(
+                conversationId, userId, start, end, Limit.of(pageSize(limit)));
+    }
+
+    @GetMapping(value = "/api/conversations/{userId}/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamConversations(@PathVariable Long userId) {
+        logger.info("Streaming conversations for userId: {}", userId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> jsonRowStreamer.streamConversations(userId, out));
     }
 
     @DeleteMapping("/api/conversations/{conversationId}")
     public Map<String, String> deleteConversation(@PathVariable String conversationId) {
         Map<String, String> response = new HashMap<>();
         try {
-            if (conversationRepository.findByConversationId(conversationId).isEmpty()) {
+            List<Long> owners = conversationRepository.deleteByConversationIdReturningUserIds(conversationId);
+            if (owners.isEmpty()) {
                 logger.warn("Conversation with conversationId {} not found", conversationId);
                 response.put("error", "Conversation not found");
             } else {
-                conversationRepository.deleteByConversationId(conversationId);
+                conversationContext.evict(conversationId);
+                userListCache.invalidate(UserListCache.CONVERSATIONS, owners);
                 logger.info("Deleted conversation with conversationId: {}", conversationId);
                 response.put("message", "Conversation deleted successfully");
             }
@@ -412,6 +511,96 @@ public class NoteController {
         return response;
     }
 
+    @GetMapping("/search")
+    public SearchResults search(
+            @RequestParam Long userId,
+            @RequestParam("q") String query,
+            @RequestParam(value = "type", defaultValue = "all") String type,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        int pageSize = limit == null || limit <= 0 ? defaultSearchPageSize : pageSize(limit);
+        logger.info("Searching {} for userId: {}, page: {}", type, userId, page);
+        return searchService.search(userId, query, type, Math.max(page, 0), pageSize);
+    }
+
+    /**
+     * Serves a user's list through {@link UserListCache} with its ETag, or a 304 without
+     * touching the rows when the client already has the current version.
+     */
+    private <T> ResponseEntity<List<T>> cachedList(String kind, Long userId, String ifNoneMatch, Supplier<List<T>> loader) {
+        String current = userListCache.notModified(kind, userId, ifNoneMatch);
+        if (current != null) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).build();
+        }
+        UserListCache.Listing<T> listing = userListCache.lookup(kind, userId, loader);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (listing.etag() != null) {
+            response.eTag(listing.etag());
+        }
+        return response.body(listing.rows());
+    }
+
+    /**
+     * Runs pipeline work for a user once {@link FairScheduler} admits it, adding the time it
+     * waited for a slot to the response as {@code queueWaitMs}.
+     */
+    private ResponseEntity<Map<String, String>> scheduled(Long userId, Supplier<Map<String, String>> work) {
+        try {
+            fairScheduler.admit(userId);
+            try (FairScheduler.Permit permit = fairScheduler.acquire(userId, Duration.ofSeconds(maxQueueWaitSeconds))) {
+                Map<String, String> response = new HashMap<>(work.get());
+                response.put("queueWaitMs", String.valueOf(permit.getQueueWaitMs()));
+                return ResponseEntity.ok(response);
+            }
+        } catch (SchedulerRejectedException e) {
+            return rejected(userId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Map<String, String> response = new HashMap<>();
+            response.put("error", "Request was interrupted");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+    }
+
+    private ResponseEntity<Map<String, String>> rejected(Long userId, SchedulerRejectedException e) {
+        logger.warn("Rejected request for userId {}: {}", userId, e.getMessage());
+        Map<String, String> response = new HashMap<>();
+        response.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(response);
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return defaultPageSize;
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
+    private <T> KeysetPage<T> toPage(List<T> rows, int pageSize, Function<T, String> cursor) {
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, pageSize);
+        return new KeysetPage<>(items, cursor.apply(items.get(pageSize - 1)));
+    }
+
+    private File spoolAudio(MultipartFile audioFile) throws IOException {
+        Timer.Sample spooling = metrics.start();
+        File tempFile = File.createTempFile("audio", ".wav");
+        try {
+            audioFile.transferTo(tempFile);
+        } catch (IOException e) {
+            deleteTempFile(tempFile);
+            throw e;
+        }
+        metrics.stop(spooling, "spool");
+        metrics.bytesProcessed("audio", tempFile.length());
+        logger.info("Audio file saved to: {}, size: {} bytes", tempFile.getAbsolutePath(), tempFile.length());
+        return tempFile;
+    }
+
     private void deleteTempFile(File file) {
         if (file != null && file.exists()) {
             if (file.delete()) {
@@ -0,0 +1,433 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The transcribe-then-format pipeline shared by the synchronous endpoints and the job API.
+ * Results use the same response map shape the endpoints have always returned. Successful
+ * transcriptions and notes are cached by content, so a repeated upload or text never reaches
+ * a worker, and a duplicate that arrives while the original is still running shares its
+ * result. Progress events go only to the request that started the work.
+ */
+@Service
+public class NotePipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotePipeline.class);
+    // Compressed audio is assumed to be at least 32 kbit/s, so a length estimated from its size errs long
+    private static final long MIN_COMPRESSED_BYTES_PER_SECOND = 4000;
+    private static final Duration FORMAT_TIMEOUT = Duration.ofSeconds(120);
+    private static final String TRANSCRIPTION_CACHE = "transcription";
+    private static final String NOTES_CACHE = "notes";
+
+    @Autowired
+    private PythonWorkerPools workerPools;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Autowired
+    private ConversationContextCache conversationContext;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Autowired
+    private AudioPreprocessor audioPreprocessor;
+
+    @Autowired
+    private AudioChunker audioChunker;
+
+    @Autowired
+    private FairScheduler fairScheduler;
+
+    @Value("${echotype.worker.borrow-timeout-seconds:60}")
+    private long borrowTimeoutSeconds;
+
+    @Value("${echotype.transcribe.timeout-base-seconds:60}")
+    private double timeoutBaseSeconds;
+
+    @Value("${echotype.transcribe.timeout-per-audio-second:1.0}")
+    private double timeoutPerAudioSecond;
+
+    @Value("${echotype.transcribe.max-timeout-seconds:3600}")
+    private double maxTimeoutSeconds;
+
+    @Value("${echotype.transcribe.chunk.parallelism:0}")
+    private int chunkParallelism;
+
+    private final ExecutorService chunkExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // Keyed like the caches plus the user: identical requests of one user in flight at the same
+    // time share one worker call, and only that user's progress listener sees it
+    private final SingleFlight<String> transcriptions = new SingleFlight<>(() -> metrics.coalesced("transcription"));
+    private final SingleFlight<String> formats = new SingleFlight<>(() -> metrics.coalesced("format"));
+
+    @PreDestroy
+    public void shutdown() {
+        chunkExecutor.shutdownNow();
+    }
+
+    public Map<String, String> transcribeAndFormat(File audioFile, Long userId, String conversationHistory,
+                                                   String conversationId) {
+        return transcribeAndFormat(audioFile, userId, conversationHistory, conversationId, ProgressListener.NONE);
+    }
+
+    public Map<String, String> transcribeAndFormat(File audioFile, Long userId, String conversationHistory,
+                                                   String conversationId, ProgressListener progress) {
+        return transcribeAndFormat(() -> transcribe(audioFile, userId, progress), userId, conversationHistory,
+                conversationId, progress);
+    }
+
+    /**
+     * Transcribes audio read from {@code audio} as it arrives, without spooling it to a file.
+     * The transcription is still cached, but only after the fact: the key is not known until
+     * the last byte has been read.
+     */
+    public Map<String, String> transcribeAndFormat(InputStream audio, Long userId, String conversationHistory,
+                                                   String conversationId) {
+        return transcribeAndFormat(() -> transcribe(audio), userId, conversationHistory, conversationId,
+                ProgressListener.NONE);
+    }
+
+    @FunctionalInterface
+    private interface Transcriber {
+        String transcribe() throws IOException, InterruptedException;
+    }
+
+    private Map<String, String> transcribeAndFormat(Transcriber transcriber, Long userId, String conversationHistory,
+                                                    String conversationId, ProgressListener progress) {
+        Map<String, String> response = new HashMap<>();
+        metrics.enter();
+        try {
+            logger.info("Starting transcription...");
+            // The transcriber reports its own stages, and none on a cache hit
+            String transcription;
+            try {
+                transcription = transcriber.transcribe();
+            } catch (WorkerException e) {
+                logger.error("Transcription failed: {}", e.getMessage());
+                response.put("error", e.isTimeout() ? "Transcription timed out" : "Transcription failed: " + e.getMessage());
+                return response;
+            }
+            logger.info("Transcription completed successfully: {}", transcription);
+
+            logger.info("Starting formatting...");
+            progress.stage("format");
+            String formattedNotes;
+            try {
+                formattedNotes = format(transcription, userId, conversationHistory, conversationId, progress);
+            } catch (WorkerException e) {
+                logger.error("Formatting failed: {}", e.getMessage());
+                response.put("error", e.isTimeout() ? "Formatting timed out" : "Formatting failed: " + e.getMessage());
+                return response;
+            }
+            logger.info("Formatting completed successfully: {}", formattedNotes);
+
+            response.put("transcription", transcription.isEmpty() ? "No transcription generated" : transcription);
+            response.put("formattedNotes", formattedNotes);
+            return response;
+
+        } catch (IOException | InterruptedException e) {
+            logger.error("Error processing audio: {}", e.getMessage(), e);
+            response.put("error", "Failed to process audio: " + e.getMessage());
+            return response;
+        } finally {
+            metrics.exit();
+        }
+    }
+
+    public Map<String, String> formatText(String text, Long userId, String conversationHistory, String conversationId) {
+        Map<String, String> response = new HashMap<>();
+        metrics.enter();
+        try {
+            logger.info("Starting text formatting...");
+            String formattedNotes;
+            try {
+                formattedNotes = format(text, userId, conversationHistory, conversationId, ProgressListener.NONE);
+            } catch (WorkerException e) {
+                logger.error("Formatting failed: {}", e.getMessage());
+                response.put("error", e.isTimeout() ? "Formatting timed out" : "Formatting failed: " + e.getMessage());
+                return response;
+            }
+            logger.info("Text formatting completed successfully: {}", formattedNotes);
+
+            response.put("formattedNotes", formattedNotes);
+            return response;
+
+        } catch (IOException | InterruptedException e) {
+            logger.error("Error processing text: {}", e.getMessage(), e);
+            response.put("error", "Failed to process text: " + e.getMessage());
+            return response;
+        } finally {
+            metrics.exit();
+        }
+    }
+
+    public String transcribe(File audioFile, Long userId, ProgressListener progress)
+            throws IOException, InterruptedException {
+        Timer.Sample hashing = metrics.start();
+        String key = ContentHash.of(audioFile);
+        metrics.stop(hashing, "hash");
+        Optional<String> cached = resultCache.get(TRANSCRIPTION_CACHE, key);
+        if (cached.isPresent()) {
+            logger.info("Transcription cache hit for audio {}", key);
+            return cached.get();
+        }
+        // A duplicate upload by the same user while this one is still running waits for it
+        // instead of starting its own
+        return transcriptions.execute(userId + ":" + key, () -> transcribeUncached(audioFile, userId, key, progress));
+    }
+
+    private String transcribeUncached(File audioFile, Long userId, String key, ProgressListener progress)
+            throws IOException, InterruptedException {
+        // Cached under the original upload's hash, so trimming settings never split the cache
+        progress.stage("preprocess");
+        Timer.Sample preprocessing = metrics.start();
+        Optional<AudioPreprocessor.PreprocessedAudio> preprocessed = audioPreprocessor.preprocess(audioFile);
+        metrics.stop(preprocessing, "preprocess");
+        File input = preprocessed.map(AudioPreprocessor.PreprocessedAudio::file).orElse(audioFile);
+        try {
+            progress.stage("transcribe");
+            List<AudioChunker.Chunk> chunks = preprocessed.isPresent() ? audioChunker.split(input) : List.of();
+            String transcription;
+            if (chunks.isEmpty()) {
+                double seconds = preprocessed.map(AudioPreprocessor.PreprocessedAudio::outputSeconds)
+                        .orElseGet(() -> estimateSeconds(audioFile));
+                ObjectNode request = objectMapper.createObjectNode().put("audioFile", input.getAbsolutePath());
+                Duration timeout = transcribeTimeout(seconds);
+                transcription = workerPools.transcribe()
+                        .execute(request, borrowTimeout(timeout), timeout, event -> { }, progress)
+                        .asText().trim();
+            } else {
+                transcription = transcribeChunks(chunks, userId, progress);
+            }
+            resultCache.put(TRANSCRIPTION_CACHE, key, transcription);
+            return transcription;
+        } finally {
+            if (preprocessed.isPresent() && !input.delete()) {
+                logger.warn("Failed to delete preprocessed audio: {}", input.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Transcribes chunks of one recording on up to {@code chunk.parallelism} workers at once
+     * and joins the transcripts in order. The first lane runs on the caller's {@link FairScheduler}
+     * slot; every other chunk needs a slot of its own that no one is waiting for, so a long
+     * recording only fans out over idle workers and shrinks back as other requests queue. With
+     * the default single transcribe worker, chunks run one after another as before. After a
+     * chunk fails no further chunks are started, but the running ones are let finish, since
+     * their workers are reading the chunk files.
+     */
+    private String transcribeChunks(List<AudioChunker.Chunk> chunks, Long userId, ProgressListener progress)
+            throws IOException, InterruptedException {
+        int parallelism = Math.min(chunks.size(),
+                chunkParallelism > 0 ? chunkParallelism : workerPools.transcribe().getSize());
+        logger.info("Transcribing {} chunks, {} at a time", chunks.size(), parallelism);
+        String[] transcripts = new String[chunks.size()];
+        AtomicInteger next = new AtomicInteger();
+        ChunkProgress chunkProgress = new ChunkProgress(chunks, progress);
+        List<Future<Void>> tasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                boolean extraLane = i > 0;
+                tasks.add(chunkExecutor.submit(() -> {
+                    while (true) {
+                        FairScheduler.Permit permit = extraLane ? fairScheduler.tryAcquire(userId) : null;
+                        if (extraLane && permit == null) {
+                            return null;
+                        }
+                        try {
+                            int index = next.getAndIncrement();
+                            if (index >= chunks.size()) {
+                                return null;
+                            }
+                            AudioChunker.Chunk chunk = chunks.get(index);
+                            ObjectNode request = objectMapper.createObjectNode()
+                                    .put("audioFile", chunk.file().getAbsolutePath())
+                                    .put("chunk", true);
+                            Duration timeout = transcribeTimeout(chunk.seconds());
+                            transcripts[index] = workerPools.transcribe()
+                                    .execute(request, borrowTimeout(timeout), timeout, event -> { },
+                                            chunkProgress.forChunk(index))
+                                    .asText().trim();
+                        } finally {
+                            if (permit != null) {
+                                permit.close();
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    next.set(chunks.size());
+                    if (e.getCause() instanceof IOException io) {
+                        throw io;
+                    }
+                    throw new IOException("Chunk transcription failed", e.getCause());
+                }
+            }
+        } finally {
+            next.set(chunks.size());
+            for (Future<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    // Already reported above
+                }
+            }
+            AudioChunker.delete(chunks);
+        }
+        return audioChunker.join(Arrays.asList(transcripts));
+    }
+
+    /**
+     * Reports the progress of all chunks as one, each weighted by its length.
+     */
+    private static final class ChunkProgress {
+
+        private final List<AudioChunker.Chunk> chunks;
+        private final ProgressListener progress;
+        private final double[] done;
+        private final double totalSeconds;
+        private int lastReported = -1;
+
+        ChunkProgress(List<AudioChunker.Chunk> chunks, ProgressListener progress) {
+            this.chunks = chunks;
+            this.progress = progress;
+            this.done = new double[chunks.size()];
+            this.totalSeconds = chunks.stream().mapToDouble(AudioChunker.Chunk::seconds).sum();
+        }
+
+        ProgressListener forChunk(int index) {
+            return new ProgressListener() {
+                @Override
+                public void progress(int chunkDone, int chunkTotal) {
+                    update(index, chunkTotal == 0 ? 0 : (double) chunkDone / chunkTotal);
+                }
+            };
+        }
+
+        private synchronized void update(int index, double fraction) {
+            done[index] = fraction * chunks.get(index).seconds();
+            int permille = (int) (1000 * Arrays.stream(done).sum() / totalSeconds);
+            if (permille != lastReported) {
+                lastReported = permille;
+                progress.progress(permille, 1000);
+            }
+        }
+    }
+
+    public String transcribe(InputStream audio) throws IOException, InterruptedException {
+        ContentHash.HashingInputStream hashing = new ContentHash.HashingInputStream(audio);
+        ObjectNode request = objectMapper.createObjectNode();
+        Duration timeout = Duration.ofMillis((long) (maxTimeoutSeconds * 1000));
+        String transcription = workerPools.transcribe()
+                .execute(request, hashing, borrowTimeout(timeout), timeout, event -> { }, ProgressListener.NONE)
+                .asText().trim();
+        metrics.bytesProcessed("audio", hashing.getBytesRead());
+        resultCache.put(TRANSCRIPTION_CACHE, hashing.key(), transcription);
+        return transcription;
+    }
+
+    /**
+     * Transcribes one audio chunk, passing the worker's {@code audio} and {@code segment}
+     * events to {@code onEvent} while Whisper is still decoding.
+     */
+    public String transcribeSegments(File audioFile, Consumer<JsonNode> onEvent) throws IOException, InterruptedException {
+        ObjectNode request = objectMapper.createObjectNode()
+                .put("audioFile", audioFile.getAbsolutePath())
+                .put("segments", true);
+        Duration timeout = transcribeTimeout(estimateSeconds(audioFile));
+        return workerPools.transcribe()
+                .execute(request, borrowTimeout(timeout), timeout, onEvent,
+                        ProgressListener.NONE)
+                .asText().trim();
+    }
+
+    /**
+     * Formats text into notes. The context comes from the user's stored messages in the
+     * conversation; the history the client sent is only used, cut to the same bound, when
+     * nothing is saved there yet.
+     */
+    public String format(String text, Long userId, String conversationHistory, String conversationId,
+                         ProgressListener progress) throws IOException, InterruptedException {
+        Timer.Sample building = metrics.start();
+        String context = conversationContext.contextFor(userId, conversationId, conversationHistory);
+        metrics.stop(building, "context");
+        String key = ContentHash.of(text, context, conversationId);
+        Optional<String> cached = resultCache.get(NOTES_CACHE, key);
+        if (cached.isPresent()) {
+            logger.info("Formatting cache hit for conversationId: {}", conversationId);
+            return cached.get();
+        }
+        return formats.execute(userId + ":" + key, () -> {
+            ObjectNode request = objectMapper.createObjectNode()
+                    .put("text", text)
+                    .put("history", context)
+                    .put("conversationId", conversationId);
+            String formattedNotes = workerPools.format()
+                    .execute(request, borrowTimeout(), FORMAT_TIMEOUT, event -> { }, progress).asText().trim();
+            resultCache.put(NOTES_CACHE, key, formattedNotes);
+            return formattedNotes;
+        });
+    }
+
+    /**
+     * Time allowed for transcribing {@code audioSeconds} of audio, growing with its length up
+     * to {@code max-timeout-seconds}.
+     */
+    private Duration transcribeTimeout(double audioSeconds) {
+        double seconds = Math.min(maxTimeoutSeconds, timeoutBaseSeconds + timeoutPerAudioSecond * audioSeconds);
+        return Duration.ofMillis((long) (seconds * 1000));
+    }
+
+    private static double estimateSeconds(File audioFile) {
+        return audioFile.length() / (double) MIN_COMPRESSED_BYTES_PER_SECOND;
+    }
+
+    private Duration borrowTimeout() {
+        return Duration.ofSeconds(borrowTimeoutSeconds);
+    }
+
+    /**
+     * How long a transcription waits for a worker: as long as it may then run. It already
+     * holds a {@link FairScheduler} slot, so it is next in line and must not fail as if the
+     * workers were broken just because another transcription is taking long.
+     */
+    private Duration borrowTimeout(Duration jobTimeout) {
+        Duration borrowTimeout = borrowTimeout();
+        return jobTimeout.compareTo(borrowTimeout) > 0 ? jobTimeout : borrowTimeout;
+    }
+}
@@ -1,8 +1,15 @@
 package com.example.echotype;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.Instant;
 import java.util.List;
 
 public interface NoteRepository extends JpaRepository<Note, String> {
     List<Note> findByUserId(Long userId);
+    List<Note> findByUserIdAndIsDeletedFalse(Long userId);
+    List<Note> findByUserIdAndIsDeletedFalseOrderByIdAsc(Long userId, Limit limit);
+    List<Note> findByUserIdAndIsDeletedFalseAndIdGreaterThanOrderByIdAsc(Long userId, String id, Limit limit);
+    List<Note> findByUserIdAndIsDeletedFalseAndTimestampGreaterThanEqualAndTimestampLessThanOrderByTimestampAsc(Long userId, Instant from, Instant to, Limit limit);
+    List<Note> findByUserIdAndSyncVersionGreaterThanOrderBySyncVersionAsc(Long userId, Long syncVersion, Limit limit);
 }
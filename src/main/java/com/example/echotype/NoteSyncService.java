@@ -0,0 +1,123 @@
+package com.example.echotype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Writes to notes that keep delta sync correct. The database stamps every inserted or
+ * updated row with the next {@code sync_version}; each write here first takes a
+ * transaction-scoped advisory lock on the user, so one user's versions also become visible in
+ * increasing order and {@code changes?since=} can never skip a row committed late.
+ */
+@Service
+public class NoteSyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteSyncService.class);
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO note (id, title, content, user_id, timestamp, is_synced, is_deleted)
+            VALUES (?, ?, ?, ?, ?, true, ?)
+            ON CONFLICT (id) DO UPDATE SET
+                title = EXCLUDED.title,
+                content = EXCLUDED.content,
+                user_id = EXCLUDED.user_id,
+                timestamp = EXCLUDED.timestamp,
+                is_synced = true,
+                is_deleted = EXCLUDED.is_deleted
+            """;
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserListCache userListCache;
+
+    @Value("${echotype.sync.jdbc-batch-size:200}")
+    private int jdbcBatchSize;
+
+    @Transactional
+    public Note save(Note note) {
+        lockUsers(List.of(note.getUserId()));
+        userListCache.invalidate(UserListCache.NOTES, List.of(note.getUserId()));
+        return noteRepository.save(note);
+    }
+
+    /**
+     * Marks a note deleted instead of removing the row, so other devices learn about the
+     * deletion through {@link #changesSince}.
+     *
+     * @return false if there is no live note with this id
+     */
+    @Transactional
+    public boolean tombstone(String id) {
+        Optional<Note> existing = noteRepository.findById(id).filter(note -> !Boolean.TRUE.equals(note.getIsDeleted()));
+        if (existing.isEmpty()) {
+            return false;
+        }
+        Note note = existing.get();
+        lockUsers(List.of(note.getUserId()));
+        note.setIsDeleted(true);
+        note.setIsSynced(true);
+        noteRepository.save(note);
+        userListCache.invalidate(UserListCache.NOTES, List.of(note.getUserId()));
+        return true;
+    }
+
+    /**
+     * Upserts all notes in one transaction with JDBC batching. Notes flagged
+     * {@code isDeleted} are stored as tombstones.
+     */
+    @Transactional
+    public int upsertBatch(List<Note> notes) {
+        lockUsers(notes.stream().map(Note::getUserId).toList());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, notes, jdbcBatchSize, (ps, note) -> {
+            ps.setString(1, note.getId());
+            ps.setString(2, note.getTitle());
+            ps.setString(3, note.getContent());
+            ps.setLong(4, note.getUserId());
+            ps.setObject(5, note.getTimestamp() == null ? null : note.getTimestamp().atOffset(ZoneOffset.UTC), Types.TIMESTAMP_WITH_TIMEZONE);
+            ps.setBoolean(6, Boolean.TRUE.equals(note.getIsDeleted()));
+        });
+        userListCache.invalidate(UserListCache.NOTES, notes.stream().map(Note::getUserId).toList());
+        logger.info("Upserted batch of {} notes", notes.size());
+        return notes.size();
+    }
+
+    @Transactional(readOnly = true)
+    public NoteChanges changesSince(Long userId, long since, int limit) {
+        List<Note> rows = noteRepository.findByUserIdAndSyncVersionGreaterThanOrderBySyncVersionAsc(userId, since, Limit.of(limit + 1));
+        boolean hasMore = rows.size() > limit;
+        List<Note> notes = hasMore ? rows.subList(0, limit) : rows;
+        long version = notes.isEmpty() ? since : notes.get(notes.size() - 1).getSyncVersion();
+        // Read after the rows: a purge committed in between is then seen here instead
+        boolean resyncRequired = since > 0 && since < purgedThrough(userId);
+        return new NoteChanges(notes, version, hasMore, resyncRequired);
+    }
+
+    private long purgedThrough(Long userId) {
+        List<Long> purged = jdbcTemplate.queryForList("SELECT purged_through FROM note_purge WHERE user_id = ?", Long.class, userId);
+        return purged.isEmpty() ? 0 : purged.get(0);
+    }
+
+    private void lockUsers(Collection<Long> userIds) {
+        // Sorted so two batches touching the same users cannot deadlock
+        userIds.stream().filter(Objects::nonNull).distinct().sorted().forEach(userId ->
+                jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(?)", userId));
+    }
+}
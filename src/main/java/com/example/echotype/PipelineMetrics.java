@@ -0,0 +1,149 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Meters for the note pipeline, scraped from {@code /actuator/prometheus}. Every stage of a
+ * request is a tag on one timer, so a slow {@code /transcribe} shows where the time went:
+ * <ul>
+ *   <li>{@code echotype.pipeline.stage} - latency histogram per {@code stage}, including the
+ *       timings the Python workers report (e.g. {@code transcribe.inference})</li>
+ *   <li>{@code echotype.worker.timeouts}, {@code echotype.worker.failures},
+ *       {@code echotype.worker.exits} - per {@code pool}</li>
+ *   <li>{@code echotype.bytes.processed} - audio and text bytes accepted, per {@code kind}</li>
+ *   <li>{@code echotype.requests.coalesced} - duplicate requests that shared a running
+ *       execution instead of starting one, per {@code kind}</li>
+ *   <li>{@code echotype.audio.input.seconds}, {@code echotype.audio.removed.seconds} - audio
+ *       seen by the preprocessor and the silence it cut</li>
+ *   <li>{@code echotype.scheduler.rejected} - requests turned away by {@link FairScheduler},
+ *       per {@code reason}; time spent waiting for a slot is the {@code queue} stage</li>
+ *   <li>{@code echotype.cache.lists} - {@link UserListCache} lookups per {@code kind} and
+ *       {@code result} ({@code hit} or {@code miss}); {@code echotype.cache.lists.size} is
+ *       the number of lists held</li>
+ *   <li>{@code echotype.http.bytes.saved} - response bytes not sent, per {@code reason}:
+ *       {@code compression} for gzip, {@code not_modified} for bodies answered with 304</li>
+ *   <li>{@code echotype.notes.tombstones.purged} - tombstones removed by
+ *       {@link TombstoneCompactor}</li>
+ *   <li>{@code echotype.pipeline.in.flight} - requests currently inside the pipeline</li>
+ * </ul>
+ */
+@Component
+public class PipelineMetrics {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("echotype.pipeline.in.flight", inFlight, AtomicInteger::get)
+                .description("Requests currently being transcribed or formatted")
+                .register(registry);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void stop(Timer.Sample sample, String stage) {
+        sample.stop(stageTimer(stage));
+    }
+
+    public void record(String stage, Duration duration) {
+        stageTimer(stage).record(duration);
+    }
+
+    /**
+     * Records the {@code timings} object a worker attaches to its frames, in seconds per
+     * stage, under {@code pool.stage}.
+     */
+    public void recordWorkerTimings(String pool, JsonNode timings) {
+        if (timings == null) {
+            return;
+        }
+        timings.fields().forEachRemaining(entry ->
+                record(pool + "." + entry.getKey(), Duration.ofNanos((long) (entry.getValue().asDouble() * 1e9))));
+    }
+
+    public void workerTimeout(String pool) {
+        counter("echotype.worker.timeouts", "pool", pool).increment();
+    }
+
+    public void workerFailure(String pool) {
+        counter("echotype.worker.failures", "pool", pool).increment();
+    }
+
+    public void workerExited(String pool) {
+        counter("echotype.worker.exits", "pool", pool).increment();
+    }
+
+    public void bytesProcessed(String kind, long bytes) {
+        counter("echotype.bytes.processed", "kind", kind).increment(bytes);
+    }
+
+    /**
+     * Seconds of audio decoded by the preprocessor and how many of them silence trimming
+     * removed, so the ratio of the two shows how much inference time it saves.
+     */
+    public void audioTrimmed(double inputSeconds, double removedSeconds) {
+        Counter.builder("echotype.audio.input.seconds").register(registry).increment(inputSeconds);
+        Counter.builder("echotype.audio.removed.seconds").register(registry).increment(removedSeconds);
+    }
+
+    public void coalesced(String kind) {
+        counter("echotype.requests.coalesced", "kind", kind).increment();
+    }
+
+    public void schedulerRejected(String reason) {
+        counter("echotype.scheduler.rejected", "reason", reason).increment();
+    }
+
+    public void listCache(String kind, boolean hit) {
+        Counter.builder("echotype.cache.lists").tag("kind", kind).tag("result", hit ? "hit" : "miss")
+                .register(registry).increment();
+    }
+
+    public void bytesSaved(String reason, long bytes) {
+        counter("echotype.http.bytes.saved", "reason", reason).increment(bytes);
+    }
+
+    public void tombstonesPurged(long count) {
+        Counter.builder("echotype.notes.tombstones.purged").register(registry).increment(count);
+    }
+
+    public void gauge(String name, Supplier<Number> value, String... tags) {
+        Gauge.builder(name, value).tags(tags).register(registry);
+    }
+
+    public void enter() {
+        inFlight.incrementAndGet();
+    }
+
+    public void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("echotype.pipeline.stage")
+                .description("Time spent in each stage of the note pipeline")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter counter(String name, String tag, String value) {
+        return Counter.builder(name).tag(tag, value).register(registry);
+    }
+}
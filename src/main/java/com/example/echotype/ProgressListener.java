@@ -0,0 +1,16 @@
+package com.example.echotype;
+
+/**
+ * Receives progress of a pipeline run: each stage as it starts and, within long stages such
+ * as Whisper inference, how many units of work are done out of the total.
+ */
+public interface ProgressListener {
+
+    ProgressListener NONE = new ProgressListener() { };
+
+    default void stage(String stage) {
+    }
+
+    default void progress(int done, int total) {
+    }
+}
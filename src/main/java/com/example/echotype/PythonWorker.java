@@ -0,0 +1,348 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * A long-lived Python script started with {@code --worker}. Requests and responses are
+ * exchanged as length-prefixed frames over stdin/stdout, JSON apart from fixed-size progress
+ * frames (see {@code worker_protocol.py}); stderr carries the script's logs.
+ * A worker handles one request at a time and is owned by a {@link PythonWorkerPool}.
+ */
+public class PythonWorker implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PythonWorker.class);
+    private static final Pattern LOG_LINE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}\\s+\\d{2}:\\d{2}:\\d{2}[,.]\\d{3}\\s+\\[\\w+\\].*");
+    private static final Pattern PROGRESS_LINE = Pattern.compile("\\s*\\d+%.*");
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    // Kind byte and two ints: units done, units in total. JSON frames start with '{'.
+    private static final int PROGRESS_FRAME = 0x01;
+    private static final int PROGRESS_FRAME_BYTES = 9;
+    // Kind byte and raw bytes of a streamed request body; an empty chunk ends the body
+    private static final int CHUNK_FRAME = 0x02;
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    enum StderrLine { LOG, PROGRESS, OTHER }
+
+    private final String name;
+    private final Process process;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService watchdog;
+    private int completedJobs;
+    private boolean broken;
+    private JsonNode startupTimings;
+    private JsonNode lastTimings;
+    private byte[] chunkBuffer;
+
+    /**
+     * A failure reading the body being streamed to the script, as opposed to a failure
+     * talking to the script itself.
+     */
+    private static final class BodyReadException extends IOException {
+        BodyReadException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    private PythonWorker(String name, Process process, ObjectMapper objectMapper, ScheduledExecutorService watchdog) {
+        this.name = name;
+        this.process = process;
+        this.input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        this.output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.objectMapper = objectMapper;
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Starts the process and waits for its {@code ready} frame, which the script sends once
+     * its model is loaded.
+     */
+    public static PythonWorker start(String name, List<String> command, ObjectMapper objectMapper,
+                                     ScheduledExecutorService watchdog, Duration startupTimeout) throws IOException {
+        logger.info("Starting worker {}: {}", name, command);
+        Process process = new ProcessBuilder(command).start();
+        PythonWorker worker = new PythonWorker(name, process, objectMapper, watchdog);
+        Thread.ofPlatform().daemon().name(name + "-stderr").start(worker::drainStderr);
+
+        JsonNode ready = worker.readFrame(startupTimeout);
+        if (!"ready".equals(ready.path("type").asText())) {
+            worker.close();
+            throw new WorkerException("Worker " + name + " sent unexpected frame during startup: " + ready);
+        }
+        worker.startupTimings = ready.get("timings");
+        logger.info("Worker {} ready (pid {})", name, process.pid());
+        return worker;
+    }
+
+    public JsonNode call(ObjectNode request, Duration timeout) throws IOException {
+        return call(request, timeout, event -> { }, ProgressListener.NONE);
+    }
+
+    /**
+     * Sends one request and waits for its {@code result} frame. Frames the script sends before
+     * that go to {@code onEvent}, except stage events and progress frames, which go to
+     * {@code progress}. An {@code error} frame from the script leaves the worker usable; a
+     * timeout kills the process and marks it broken.
+     */
+    public JsonNode call(ObjectNode request, Duration timeout, Consumer<JsonNode> onEvent, ProgressListener progress)
+            throws IOException {
+        return call(request, null, timeout, onEvent, progress);
+    }
+
+    /**
+     * Like {@link #call(ObjectNode, Duration, Consumer, ProgressListener)}, but first streams
+     * {@code body} to the script as chunk frames, for jobs that read their input from the
+     * protocol instead of a file. The timeout covers the upload as well. If reading
+     * {@code body} fails the script is left waiting mid-stream, so the worker is marked broken.
+     */
+    public JsonNode call(ObjectNode request, InputStream body, Duration timeout, Consumer<JsonNode> onEvent,
+                         ProgressListener progress) throws IOException {
+        request.put("type", "job");
+        if (body != null) {
+            request.put("stream", true);
+        }
+        lastTimings = null;
+        writeFrame(request);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> kill = killAfter(timeout, timedOut);
+        JsonNode response;
+        try {
+            if (body != null) {
+                writeBody(body);
+            }
+            response = awaitResponse(onEvent, progress);
+        } catch (BodyReadException e) {
+            broken = true;
+            throw e.getCause();
+        } catch (IOException e) {
+            broken = true;
+            throw translate(e, timedOut.get(), timeout);
+        } finally {
+            kill.cancel(false);
+        }
+        completedJobs++;
+        lastTimings = response.get("timings");
+        String type = response.path("type").asText();
+        if ("error".equals(type)) {
+            throw new WorkerException(response.path("error").asText());
+        }
+        if (!"result".equals(type)) {
+            throw new WorkerException("Worker " + name + " sent unexpected frame: " + response);
+        }
+        return response.get("result");
+    }
+
+    public boolean ping(Duration timeout) {
+        try {
+            writeFrame(objectMapper.createObjectNode().put("type", "ping"));
+            return "pong".equals(readFrame(timeout).path("type").asText());
+        } catch (IOException e) {
+            logger.warn("Worker {} failed health check: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean isAlive() {
+        return !broken && process.isAlive();
+    }
+
+    /**
+     * Stage timings in seconds the script reported while starting, such as model loading, or
+     * null if it reported none.
+     */
+    public JsonNode getStartupTimings() {
+        return startupTimings;
+    }
+
+    /**
+     * Stage timings in seconds the script reported for the last job, or null.
+     */
+    public JsonNode getLastTimings() {
+        return lastTimings;
+    }
+
+    public int getCompletedJobs() {
+        return completedJobs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void writeFrame(JsonNode message) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(message);
+        try {
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.flush();
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    private void writeBody(InputStream body) throws IOException {
+        if (chunkBuffer == null) {
+            chunkBuffer = new byte[CHUNK_BYTES];
+        }
+        while (true) {
+            int read;
+            try {
+                read = body.read(chunkBuffer);
+            } catch (IOException e) {
+                throw new BodyReadException(e);
+            }
+            if (read == -1) {
+                break;
+            }
+            if (read > 0) {
+                output.writeInt(read + 1);
+                output.write(CHUNK_FRAME);
+                output.write(chunkBuffer, 0, read);
+            }
+        }
+        // An empty chunk ends the body
+        output.writeInt(1);
+        output.write(CHUNK_FRAME);
+        output.flush();
+    }
+
+    private JsonNode readFrame(Duration timeout) throws IOException {
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> kill = killAfter(timeout, timedOut);
+        try {
+            int length = readLength();
+            return readJson(length, input.readUnsignedByte());
+        } catch (IOException e) {
+            broken = true;
+            throw translate(e, timedOut.get(), timeout);
+        } finally {
+            kill.cancel(false);
+        }
+    }
+
+    private JsonNode awaitResponse(Consumer<JsonNode> onEvent, ProgressListener progress) throws IOException {
+        while (true) {
+            int length = readLength();
+            int kind = input.readUnsignedByte();
+            if (kind == PROGRESS_FRAME) {
+                if (length != PROGRESS_FRAME_BYTES) {
+                    throw new WorkerException("Worker " + name + " sent invalid progress frame length: " + length);
+                }
+                // Read straight off the stream: progress is the most frequent frame, so no buffer or tree per frame
+                progress.progress(input.readInt(), input.readInt());
+                continue;
+            }
+            JsonNode frame = readJson(length, kind);
+            if (!"event".equals(frame.path("type").asText())) {
+                return frame;
+            }
+            if ("stage".equals(frame.path("event").asText())) {
+                progress.stage(frame.path("stage").asText());
+            } else {
+                onEvent.accept(frame);
+            }
+        }
+    }
+
+    /**
+     * Reads a frame length and checks it before anything of the frame itself is read, so a
+     * corrupt length fails the worker instead of being taken for a kind byte.
+     */
+    private int readLength() throws IOException {
+        int length = input.readInt();
+        if (length < 1 || length > MAX_FRAME_BYTES) {
+            throw new WorkerException("Worker " + name + " sent invalid frame length: " + length);
+        }
+        return length;
+    }
+
+    private JsonNode readJson(int length, int firstByte) throws IOException {
+        byte[] payload = new byte[length];
+        payload[0] = (byte) firstByte;
+        input.readFully(payload, 1, length - 1);
+        return objectMapper.readTree(payload);
+    }
+
+    private ScheduledFuture<?> killAfter(Duration timeout, AtomicBoolean timedOut) {
+        return watchdog.schedule(() -> {
+            timedOut.set(true);
+            process.destroyForcibly();
+        }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private IOException translate(IOException e, boolean timedOut, Duration timeout) {
+        if (timedOut) {
+            return new WorkerException("Worker " + name + " timed out after " + timeout.toSeconds() + " seconds", true);
+        }
+        if (e instanceof EOFException) {
+            return new WorkerException("Worker " + name + " exited unexpectedly");
+        }
+        return e;
+    }
+
+    static StderrLine classify(String line) {
+        if (LOG_LINE.matcher(line).matches()) {
+            return StderrLine.LOG;
+        }
+        if (PROGRESS_LINE.matcher(line).matches()) {
+            return StderrLine.PROGRESS;
+        }
+        return StderrLine.OTHER;
+    }
+
+    private void drainStderr() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                switch (classify(line)) {
+                    case LOG -> logger.info("{} log: {}", name, line);
+                    case PROGRESS -> logger.debug("{} progress: {}", name, line);
+                    case OTHER -> logger.error("{} error: {}", name, line);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error reading {} stderr: {}", name, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            output.close();
+        } catch (IOException e) {
+            logger.debug("Error closing {} stdin: {}", name, e.getMessage());
+        }
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Worker {} stopped after {} jobs", name, completedJobs);
+    }
+}
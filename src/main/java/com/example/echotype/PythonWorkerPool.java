@@ -0,0 +1,214 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A fixed-size pool of warm {@link PythonWorker}s running the same script. Workers are started
+ * on demand up to {@code size}, replaced when they crash or fail a health check, and recycled
+ * after {@code maxJobsPerWorker} jobs to bound memory growth in the Python process.
+ */
+public class PythonWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(PythonWorkerPool.class);
+
+    private final String name;
+    private final List<String> command;
+    private final int size;
+    private final int maxJobsPerWorker;
+    private final Duration startupTimeout;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService watchdog;
+    private final PipelineMetrics metrics;
+    private final LinkedBlockingDeque<PythonWorker> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicInteger started = new AtomicInteger();
+    private volatile boolean closed;
+
+    public PythonWorkerPool(String name, List<String> command, int size, int maxJobsPerWorker,
+                            Duration startupTimeout, ObjectMapper objectMapper, ScheduledExecutorService watchdog,
+                            PipelineMetrics metrics) {
+        this.name = name;
+        this.command = List.copyOf(command);
+        this.size = size;
+        this.maxJobsPerWorker = maxJobsPerWorker;
+        this.startupTimeout = startupTimeout;
+        this.objectMapper = objectMapper;
+        this.watchdog = watchdog;
+        this.metrics = metrics;
+        metrics.gauge("echotype.worker.live", live::get, "pool", name);
+        metrics.gauge("echotype.worker.idle", idle::size, "pool", name);
+    }
+
+    /**
+     * Borrows a worker, runs one request on it and returns it to the pool. A worker that
+     * crashed or timed out is discarded rather than returned.
+     */
+    public JsonNode execute(ObjectNode request, Duration borrowTimeout, Duration jobTimeout)
+            throws IOException, InterruptedException {
+        return execute(request, borrowTimeout, jobTimeout, event -> { }, ProgressListener.NONE);
+    }
+
+    public JsonNode execute(ObjectNode request, Duration borrowTimeout, Duration jobTimeout, Consumer<JsonNode> onEvent,
+                            ProgressListener progress) throws IOException, InterruptedException {
+        return execute(request, null, borrowTimeout, jobTimeout, onEvent, progress);
+    }
+
+    /**
+     * Runs a request whose input is streamed to the worker from {@code body}. The worker is
+     * held for the whole upload, so a slow client keeps it from other requests.
+     */
+    public JsonNode execute(ObjectNode request, InputStream body, Duration borrowTimeout, Duration jobTimeout,
+                            Consumer<JsonNode> onEvent, ProgressListener progress) throws IOException, InterruptedException {
+        Timer.Sample borrowing = metrics.start();
+        PythonWorker worker = borrow(borrowTimeout);
+        metrics.stop(borrowing, name + ".borrow");
+        Timer.Sample calling = metrics.start();
+        try {
+            return worker.call(request, body, jobTimeout, onEvent, progress);
+        } catch (WorkerException e) {
+            if (e.isTimeout()) {
+                metrics.workerTimeout(name);
+            } else {
+                metrics.workerFailure(name);
+            }
+            throw e;
+        } finally {
+            metrics.stop(calling, name + ".call");
+            metrics.recordWorkerTimings(name, worker.getLastTimings());
+            release(worker);
+        }
+    }
+
+    public PythonWorker borrow(Duration timeout) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!closed) {
+            PythonWorker worker = idle.pollFirst();
+            if (worker == null && live.incrementAndGet() <= size) {
+                try {
+                    return startWorker();
+                } catch (IOException e) {
+                    live.decrementAndGet();
+                    throw e;
+                }
+            } else if (worker == null) {
+                live.decrementAndGet();
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                worker = idle.pollFirst(remaining, TimeUnit.NANOSECONDS);
+            }
+            if (worker != null) {
+                if (worker.isAlive()) {
+                    return worker;
+                }
+                logger.warn("Discarding dead worker {}", worker.getName());
+                metrics.workerExited(name);
+                discard(worker);
+            }
+        }
+        throw new WorkerException("No " + name + " worker available within " + timeout.toSeconds() + " seconds");
+    }
+
+    public void release(PythonWorker worker) {
+        if (closed || !worker.isAlive()) {
+            if (!worker.isAlive()) {
+                metrics.workerExited(name);
+            }
+            discard(worker);
+        } else if (maxJobsPerWorker > 0 && worker.getCompletedJobs() >= maxJobsPerWorker) {
+            logger.info("Recycling worker {} after {} jobs", worker.getName(), worker.getCompletedJobs());
+            discard(worker);
+        } else {
+            idle.offerFirst(worker);
+        }
+    }
+
+    /**
+     * Pings every idle worker, replacing the ones that crashed or stopped answering. Busy
+     * workers are checked when they are returned.
+     */
+    public void healthCheck(Duration pingTimeout) {
+        List<PythonWorker> checked = new ArrayList<>();
+        PythonWorker worker;
+        while ((worker = idle.pollLast()) != null) {
+            if (worker.isAlive() && worker.ping(pingTimeout)) {
+                checked.add(worker);
+            } else {
+                logger.warn("Worker {} failed health check, replacing it", worker.getName());
+                metrics.workerExited(name);
+                discard(worker);
+            }
+        }
+        checked.forEach(idle::offerLast);
+    }
+
+    /**
+     * Starts workers until the pool is at full size so the first requests do not pay for
+     * model loading.
+     */
+    public void fill() {
+        while (!closed) {
+            if (live.incrementAndGet() > size) {
+                live.decrementAndGet();
+                return;
+            }
+            try {
+                idle.offerLast(startWorker());
+            } catch (IOException e) {
+                live.decrementAndGet();
+                logger.error("Failed to start {} worker: {}", name, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        PythonWorker worker;
+        while ((worker = idle.pollFirst()) != null) {
+            worker.close();
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getLiveWorkers() {
+        return live.get();
+    }
+
+    public int getIdleWorkers() {
+        return idle.size();
+    }
+
+    private PythonWorker startWorker() throws IOException {
+        Timer.Sample starting = metrics.start();
+        PythonWorker worker = PythonWorker.start(name + "-" + started.incrementAndGet(), command, objectMapper, watchdog, startupTimeout);
+        metrics.stop(starting, name + ".startup");
+        metrics.recordWorkerTimings(name, worker.getStartupTimings());
+        return worker;
+    }
+
+    private void discard(PythonWorker worker) {
+        live.decrementAndGet();
+        Thread.ofVirtual().start(worker::close);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Owns the warm worker pools for {@code transcribe.py} and {@code format_notes.py}. The scripts
+ * are extracted from the classpath once at startup instead of on every request. Scripts found
+ * in {@code echotype.worker.script-directory} replace the bundled ones, which is how the load
+ * test stubs in {@code src/loadtest/stubs} stand in for Whisper and Gemini.
+ */
+@Component
+public class PythonWorkerPools {
+
+    private static final Logger logger = LoggerFactory.getLogger(PythonWorkerPools.class);
+    private static final List<String> SCRIPTS = List.of("worker_protocol.py", "transcribe.py", "format_notes.py");
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${echotype.worker.python-executable:python3}")
+    private String pythonExecutable;
+
+    @Value("${echotype.worker.script-directory:}")
+    private String scriptOverrideDirectory;
+
+    @Value("${echotype.worker.transcribe.pool-size:1}")
+    private int transcribePoolSize;
+
+    @Value("${echotype.worker.transcribe.threads:0}")
+    private int transcribeThreads;
+
+    @Value("${echotype.worker.format.pool-size:2}")
+    private int formatPoolSize;
+
+    @Value("${echotype.worker.max-jobs:200}")
+    private int maxJobsPerWorker;
+
+    @Value("${echotype.worker.startup-timeout-seconds:180}")
+    private long startupTimeoutSeconds;
+
+    @Value("${echotype.worker.health-check-timeout-seconds:10}")
+    private long healthCheckTimeoutSeconds;
+
+    @Value("${echotype.worker.prestart:true}")
+    private boolean prestart;
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("worker-watchdog").factory());
+    private Path scriptDirectory;
+    private PythonWorkerPool transcribePool;
+    private PythonWorkerPool formatPool;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Timer.Sample extracting = metrics.start();
+        scriptDirectory = Files.createTempDirectory("echotype-scripts");
+        for (String script : SCRIPTS) {
+            extractScript(script);
+        }
+        metrics.stop(extracting, "script_extraction");
+        Duration startupTimeout = Duration.ofSeconds(startupTimeoutSeconds);
+        // By default the cores are shared out between the transcribe workers rather than each using all of them
+        int threads = transcribeThreads > 0 ? transcribeThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / transcribePoolSize);
+        List<String> transcribeCommand = new ArrayList<>(command("transcribe.py"));
+        transcribeCommand.addAll(List.of("--threads", String.valueOf(threads)));
+        transcribePool = new PythonWorkerPool("transcribe", transcribeCommand, transcribePoolSize,
+                maxJobsPerWorker, startupTimeout, objectMapper, watchdog, metrics);
+        formatPool = new PythonWorkerPool("format", command("format_notes.py"), formatPoolSize,
+                maxJobsPerWorker, startupTimeout, objectMapper, watchdog, metrics);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (prestart) {
+            Thread.ofVirtual().name("transcribe-warmup").start(transcribePool::fill);
+            Thread.ofVirtual().name("format-warmup").start(formatPool::fill);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${echotype.worker.health-check-interval-ms:30000}")
+    public void healthCheck() {
+        Duration timeout = Duration.ofSeconds(healthCheckTimeoutSeconds);
+        transcribePool.healthCheck(timeout);
+        formatPool.healthCheck(timeout);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transcribePool.close();
+        formatPool.close();
+        watchdog.shutdownNow();
+        for (String script : SCRIPTS) {
+            deleteScript(scriptDirectory.resolve(script).toFile());
+        }
+        deleteScript(scriptDirectory.toFile());
+    }
+
+    public PythonWorkerPool transcribe() {
+        return transcribePool;
+    }
+
+    public PythonWorkerPool format() {
+        return formatPool;
+    }
+
+    private List<String> command(String script) {
+        return List.of(pythonExecutable, scriptDirectory.resolve(script).toString(), "--worker");
+    }
+
+    private void extractScript(String scriptName) throws IOException {
+        if (!scriptOverrideDirectory.isBlank()) {
+            Path override = Path.of(scriptOverrideDirectory, scriptName);
+            if (Files.isRegularFile(override)) {
+                Files.copy(override, scriptDirectory.resolve(scriptName), StandardCopyOption.REPLACE_EXISTING);
+                logger.info("Script {} copied from {} to: {}", scriptName, override.getParent(), scriptDirectory);
+                return;
+            }
+        }
+        ClassPathResource resource = new ClassPathResource("scripts/" + scriptName);
+        if (!resource.exists()) {
+            throw new IOException("Script not found in classpath: " + scriptName);
+        }
+        try (InputStream inputStream = resource.getInputStream()) {
+            Files.copy(inputStream, scriptDirectory.resolve(scriptName), StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info("Script {} extracted to: {}", scriptName, scriptDirectory);
+    }
+
+    private void deleteScript(File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Failed to delete script file: {}", file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.echotype;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache for pipeline results. Values live in an in-memory LRU bounded by
+ * {@code memory-max-bytes}; when {@code disk-directory} is set they are also written there so
+ * they survive restarts, with the least recently used files removed beyond {@code disk-max-bytes}.
+ */
+@Component
+public class ResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Value("${echotype.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${echotype.cache.memory-max-bytes:33554432}")
+    private long memoryMaxBytes;
+
+    @Value("${echotype.cache.disk-directory:}")
+    private String diskDirectory;
+
+    @Value("${echotype.cache.disk-max-bytes:1073741824}")
+    private long diskMaxBytes;
+
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+    private Path diskRoot;
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (enabled && !diskDirectory.isBlank()) {
+            diskRoot = Path.of(diskDirectory);
+            Files.createDirectories(diskRoot);
+            // Temp files left by a write that never finished are not entries
+            try (Stream<Path> files = Files.walk(diskRoot)) {
+                files.filter(ResultCache::isTempFile).forEach(this::deleteQuietly);
+            }
+            try (Stream<Path> files = Files.walk(diskRoot)) {
+                diskBytes.set(files.filter(Files::isRegularFile).mapToLong(this::sizeOf).sum());
+            }
+            logger.info("Result cache on disk at {} holds {} bytes", diskRoot, diskBytes.get());
+        }
+    }
+
+    public Optional<String> get(String namespace, String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String memoryKey = namespace + ":" + key;
+        synchronized (memory) {
+            String value = memory.get(memoryKey);
+            if (value != null) {
+                memoryHits.incrementAndGet();
+                return Optional.of(value);
+            }
+        }
+        if (diskRoot != null) {
+            Path file = diskRoot.resolve(namespace).resolve(key);
+            try {
+                String value = Files.readString(file, StandardCharsets.UTF_8);
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+                diskHits.incrementAndGet();
+                putInMemory(memoryKey, value);
+                return Optional.of(value);
+            } catch (NoSuchFileException e) {
+                // fall through to a miss
+            } catch (IOException e) {
+                logger.warn("Failed to read cache entry {}: {}", file, e.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public void put(String namespace, String key, String value) {
+        if (!enabled) {
+            return;
+        }
+        putInMemory(namespace + ":" + key, value);
+        if (diskRoot != null) {
+            writeToDisk(namespace, key, value);
+        }
+    }
+
+    public Map<String, Long> stats() {
+        long entries;
+        long bytes;
+        synchronized (memory) {
+            entries = memory.size();
+            bytes = memoryBytes;
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("memoryEntries", entries);
+        stats.put("memoryBytes", bytes);
+        stats.put("diskBytes", diskBytes.get());
+        return stats;
+    }
+
+    private void putInMemory(String memoryKey, String value) {
+        long size = weigh(memoryKey, value);
+        if (size > memoryMaxBytes) {
+            return;
+        }
+        synchronized (memory) {
+            String previous = memory.put(memoryKey, value);
+            if (previous != null) {
+                memoryBytes -= weigh(memoryKey, previous);
+            }
+            memoryBytes += size;
+            var eldest = memory.entrySet().iterator();
+            while (memoryBytes > memoryMaxBytes && eldest.hasNext()) {
+                Map.Entry<String, String> entry = eldest.next();
+                memoryBytes -= weigh(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    private void writeToDisk(String namespace, String key, String value) {
+        try {
+            Path directory = Files.createDirectories(diskRoot.resolve(namespace));
+            Path file = directory.resolve(key);
+            long previous = Files.exists(file) ? sizeOf(file) : 0;
+            Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            Files.writeString(temp, value, StandardCharsets.UTF_8);
+            long size = sizeOf(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(size - previous) > diskMaxBytes) {
+                trimDisk();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write cache entry {}/{}: {}", namespace, key, e.getMessage());
+        }
+    }
+
+    private synchronized void trimDisk() throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(diskRoot)) {
+            // Temp files belong to writes still in progress and are not counted yet
+            files = walk.filter(file -> Files.isRegularFile(file) && !isTempFile(file))
+                    .sorted(Comparator.comparing(this::lastModified))
+                    .toList();
+        }
+        long target = diskMaxBytes * 9 / 10;
+        for (Path file : files) {
+            if (diskBytes.get() <= target) {
+                break;
+            }
+            long size = sizeOf(file);
+            if (Files.deleteIfExists(file)) {
+                diskBytes.addAndGet(-size);
+            }
+        }
+    }
+
+    private static boolean isTempFile(Path file) {
+        return file.getFileName().toString().endsWith(TEMP_SUFFIX);
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete leftover cache file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static long weigh(String key, String value) {
+        // Rough heap footprint: two bytes per char plus entry overhead
+        return 2L * (key.length() + value.length()) + 64;
+    }
+
+    private long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
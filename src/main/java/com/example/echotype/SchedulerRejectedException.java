@@ -0,0 +1,12 @@
+package com.example.echotype;
+
+public class SchedulerRejectedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public SchedulerRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+}
@@ -0,0 +1,12 @@
+package com.example.echotype;
+
+import java.time.Instant;
+
+/**
+ * A note or conversation message matching a search. {@code type} is {@code note} or
+ * {@code message}; {@code snippet} is the matching text with the query terms wrapped in
+ * {@code <b>} tags.
+ */
+public record SearchHit(String type, String id, String conversationId, String title, Instant timestamp,
+                        double rank, String snippet) {
+}
@@ -0,0 +1,10 @@
+package com.example.echotype;
+
+import java.util.List;
+
+/**
+ * One page of search hits, best match first. When {@code hasMore} is set, ask for
+ * {@code page + 1} to get the next one.
+ */
+public record SearchResults(List<SearchHit> hits, int page, boolean hasMore) {
+}
@@ -0,0 +1,65 @@
+package com.example.echotype;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Full-text search over a user's notes and conversation messages, using the generated
+ * {@code search_vector} columns and their GIN indexes. The query takes web-search syntax:
+ * quoted phrases, {@code or} and {@code -excluded} words. Hits are ranked by cover density,
+ * newest first on ties, and paged by offset.
+ */
+@Service
+public class SearchService {
+
+    private static final String SEARCH_SQL = """
+            WITH query AS (SELECT websearch_to_tsquery('english', ?) AS q),
+            hits AS (
+                SELECT 'note' AS type, n.id AS id, NULL AS conversation_id, n.title AS title,
+                       n.timestamp AS timestamp, ts_rank_cd(n.search_vector, query.q) AS rank,
+                       coalesce(n.title, '') || ' ' || coalesce(n.content, '') AS body
+                FROM note n, query
+                WHERE ? AND n.user_id = ? AND n.is_deleted = false AND n.search_vector @@ query.q
+                UNION ALL
+                SELECT 'message', c.id::text, c.conversation_id, NULL,
+                       c.timestamp, ts_rank_cd(c.search_vector, query.q),
+                       c.message_text
+                FROM conversation c, query
+                WHERE ? AND c.user_id = ? AND c.search_vector @@ query.q
+                ORDER BY rank DESC, timestamp DESC NULLS LAST
+                LIMIT ? OFFSET ?
+            )
+            -- Headlines re-parse the text, so they are only built for the page being returned
+            SELECT hits.type, hits.id, hits.conversation_id, hits.title, hits.timestamp, hits.rank,
+                   ts_headline('english', hits.body, query.q, 'MaxFragments=2, MinWords=5, MaxWords=20') AS snippet
+            FROM hits, query
+            ORDER BY hits.rank DESC, hits.timestamp DESC NULLS LAST
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param type {@code notes} or {@code messages} to search only those; anything else searches both
+     */
+    public SearchResults search(Long userId, String query, String type, int page, int pageSize) {
+        if (query == null || query.isBlank()) {
+            return new SearchResults(List.of(), page, false);
+        }
+        boolean notes = !"messages".equals(type);
+        boolean messages = !"notes".equals(type);
+        // One extra row tells whether there is another page
+        List<SearchHit> hits = jdbcTemplate.query(SEARCH_SQL, (rs, rowNum) -> {
+            OffsetDateTime timestamp = rs.getObject("timestamp", OffsetDateTime.class);
+            return new SearchHit(rs.getString("type"), rs.getString("id"), rs.getString("conversation_id"),
+                    rs.getString("title"), timestamp == null ? null : timestamp.toInstant(),
+                    rs.getDouble("rank"), rs.getString("snippet"));
+        }, query, notes, userId, messages, userId, pageSize + 1, (long) page * pageSize);
+        boolean hasMore = hits.size() > pageSize;
+        return new SearchResults(hasMore ? hits.subList(0, pageSize) : hits, page, hasMore);
+    }
+}
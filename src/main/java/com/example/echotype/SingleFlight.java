@@ -0,0 +1,71 @@
+package com.example.echotype;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Collapses concurrent calls for the same key into one execution: the first caller runs it,
+ * callers arriving while it is still running wait for it and get the same result or exception.
+ * Once it finishes the key is free again, so later calls run afresh (or hit a cache).
+ */
+public class SingleFlight<V> {
+
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws IOException, InterruptedException;
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Runnable onCoalesced;
+
+    /**
+     * @param onCoalesced run each time a caller joins an execution already in flight
+     */
+    public SingleFlight(Runnable onCoalesced) {
+        this.onCoalesced = onCoalesced;
+    }
+
+    public V execute(String key, Call<V> call) throws IOException, InterruptedException {
+        CompletableFuture<V> execution = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, execution);
+        if (running != null) {
+            onCoalesced.run();
+            return await(running);
+        }
+        try {
+            V value = call.call();
+            execution.complete(value);
+            return value;
+        } catch (Throwable e) {
+            execution.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, execution);
+        }
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> running) throws IOException, InterruptedException {
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            // The first caller was interrupted; that says nothing about this thread
+            throw new IOException("Shared execution was interrupted", cause);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.echotype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * One streamed recording. Chunks are transcribed strictly in upload order on a chain of
+ * steps, and every event is kept so a client that subscribes late still sees all of it.
+ */
+public class StreamingSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingSession.class);
+
+    private record Event(String name, Object data) { }
+
+    private final String id;
+    private final Long userId;
+    private final String conversationId;
+    private final String conversationHistory;
+    private final List<Event> events = new ArrayList<>();
+    private final StringBuilder transcription = new StringBuilder();
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private SseEmitter emitter;
+    private double offsetSeconds;
+    private int chunks;
+    private boolean completing;
+    private boolean closed;
+    private volatile Instant lastActivity = Instant.now();
+
+    public StreamingSession(String id, Long userId, String conversationId, String conversationHistory) {
+        this.id = id;
+        this.userId = userId;
+        this.conversationId = conversationId;
+        this.conversationHistory = conversationHistory;
+    }
+
+    public synchronized void attach(SseEmitter emitter) {
+        this.emitter = emitter;
+        // A replaced subscriber's stream may end after its successor attached
+        emitter.onCompletion(() -> detach(emitter));
+        emitter.onTimeout(() -> detach(emitter));
+        for (Event event : events) {
+            if (!deliver(event)) {
+                return;
+            }
+        }
+        if (closed) {
+            emitter.complete();
+        }
+    }
+
+    public synchronized void send(String name, Object data) {
+        Event event = new Event(name, data);
+        events.add(event);
+        if (emitter != null) {
+            deliver(event);
+        }
+    }
+
+    /**
+     * Sends the last event and completes the stream.
+     */
+    public synchronized void close(String name, Object data) {
+        send(name, data);
+        closed = true;
+        lastActivity = Instant.now();
+        if (emitter != null) {
+            emitter.complete();
+        }
+    }
+
+    /**
+     * Queues the transcription of the next chunk behind everything already submitted for this
+     * session and returns the chunk number.
+     */
+    public synchronized int enqueueChunk(IntFunction<Runnable> step, Executor executor) {
+        if (closed || completing) {
+            throw new IllegalStateException("Session " + id + " no longer accepts chunks");
+        }
+        int chunk = chunks++;
+        lastActivity = Instant.now();
+        tail = tail.thenRunAsync(step.apply(chunk), executor);
+        return chunk;
+    }
+
+    /**
+     * Queues the final step. No chunks are accepted after this.
+     */
+    public synchronized void enqueueCompletion(Runnable step, Executor executor) {
+        if (closed || completing) {
+            throw new IllegalStateException("Session " + id + " is already complete");
+        }
+        completing = true;
+        lastActivity = Instant.now();
+        tail = tail.thenRunAsync(step, executor);
+    }
+
+    public synchronized void appendTranscription(String text, double durationSeconds) {
+        if (!text.isEmpty()) {
+            if (!transcription.isEmpty()) {
+                transcription.append(' ');
+            }
+            transcription.append(text);
+        }
+        offsetSeconds += durationSeconds;
+        lastActivity = Instant.now();
+    }
+
+    public synchronized String getTranscription() {
+        return transcription.toString();
+    }
+
+    public synchronized double getOffsetSeconds() {
+        return offsetSeconds;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public String getId() { return id; }
+    public Long getUserId() { return userId; }
+    public String getConversationId() { return conversationId; }
+    public String getConversationHistory() { return conversationHistory; }
+    public Instant getLastActivity() { return lastActivity; }
+
+    private synchronized void detach(SseEmitter ended) {
+        if (emitter == ended) {
+            emitter = null;
+        }
+    }
+
+    private boolean deliver(Event event) {
+        try {
+            emitter.send(SseEmitter.event().name(event.name()).data(event.data()));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Streaming session {} lost its subscriber: {}", id, e.getMessage());
+            emitter = null;
+            return false;
+        }
+    }
+}
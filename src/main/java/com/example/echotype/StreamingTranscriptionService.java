@@ -0,0 +1,194 @@
+package com.example.echotype;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Streaming transcription: a client opens a session, uploads a recording as a series of
+ * self-contained audio chunks and receives Server-Sent Events while they are processed.
+ * Finished sessions stay available for replay until they have been idle for
+ * {@code idle-timeout-minutes}. Opening a session takes one request from the user's rate
+ * limit, which covers all of its chunks; each chunk and the final formatting then run under a
+ * {@link FairScheduler} slot, like any other pipeline request.
+ * <ul>
+ *   <li>{@code segment} - one decoded Whisper segment, with times relative to the whole recording</li>
+ *   <li>{@code notes} - the full transcription and formatted notes, sent last</li>
+ *   <li>{@code error} - processing failed; the stream ends</li>
+ * </ul>
+ */
+@Service
+public class StreamingTranscriptionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingTranscriptionService.class);
+
+    @Autowired
+    private NotePipeline notePipeline;
+
+    @Autowired
+    private FairScheduler fairScheduler;
+
+    @Value("${echotype.scheduler.max-wait-seconds:300}")
+    private long maxQueueWaitSeconds;
+
+    @Value("${echotype.stream.emitter-timeout-minutes:30}")
+    private long emitterTimeoutMinutes;
+
+    @Value("${echotype.stream.idle-timeout-minutes:15}")
+    private long idleTimeoutMinutes;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, StreamingSession> sessions = new ConcurrentHashMap<>();
+
+    public StreamingSession open(Long userId, String conversationHistory, String conversationId) {
+        StreamingSession session = new StreamingSession(UUID.randomUUID().toString(), userId, conversationId, conversationHistory);
+        sessions.put(session.getId(), session);
+        logger.info("Opened streaming session {} for userId: {}, conversationId: {}", session.getId(), userId, conversationId);
+        return session;
+    }
+
+    public Optional<StreamingSession> find(String sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId));
+    }
+
+    public SseEmitter subscribe(StreamingSession session) {
+        SseEmitter emitter = new SseEmitter(Duration.ofMinutes(emitterTimeoutMinutes).toMillis());
+        session.attach(emitter);
+        return emitter;
+    }
+
+    /**
+     * Queues a chunk the caller has spooled to disk. The session owns the file from here on
+     * and deletes it once the chunk is transcribed.
+     *
+     * @throws IllegalStateException if the session was already completed or has failed
+     */
+    public int addChunk(StreamingSession session, File chunkFile) {
+        int chunk = session.enqueueChunk(index -> () -> transcribeChunk(session, index, chunkFile), executor);
+        logger.info("Queued chunk {} of streaming session {}, size: {} bytes", chunk, session.getId(), chunkFile.length());
+        return chunk;
+    }
+
+    public void complete(StreamingSession session) {
+        session.enqueueCompletion(() -> formatSession(session), executor);
+        logger.info("Streaming session {} complete, formatting queued", session.getId());
+    }
+
+    @Scheduled(fixedDelayString = "${echotype.stream.cleanup-interval-ms:60000}")
+    public void evictIdle() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(idleTimeoutMinutes));
+        sessions.values().removeIf(session -> {
+            if (session.getLastActivity().isBefore(cutoff)) {
+                if (!session.isClosed()) {
+                    logger.warn("Evicting idle streaming session {}", session.getId());
+                    session.close("error", Map.of("error", "Streaming session expired"));
+                }
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void transcribeChunk(StreamingSession session, int chunk, File chunkFile) {
+        try {
+            if (session.isClosed()) {
+                return;
+            }
+            double offset = session.getOffsetSeconds();
+            double[] duration = new double[1];
+            String text;
+            long queueWaitMs;
+            try (FairScheduler.Permit permit = acquire(session)) {
+                queueWaitMs = permit.getQueueWaitMs();
+                text = notePipeline.transcribeSegments(chunkFile, event -> {
+                    switch (event.path("event").asText()) {
+                        case "audio" -> duration[0] = event.path("duration").asDouble();
+                        case "segment" -> {
+                            Map<String, Object> segment = new HashMap<>();
+                            segment.put("chunk", chunk);
+                            segment.put("start", offset + event.path("start").asDouble());
+                            segment.put("end", offset + event.path("end").asDouble());
+                            segment.put("text", event.path("text").asText());
+                            session.send("segment", segment);
+                        }
+                        default -> logger.debug("Ignoring worker event: {}", event);
+                    }
+                });
+            }
+            session.appendTranscription(text, duration[0]);
+            logger.info("Transcribed chunk {} of streaming session {} after {} ms in the queue", chunk, session.getId(), queueWaitMs);
+        } catch (SchedulerRejectedException e) {
+            logger.warn("No slot for chunk {} of streaming session {}: {}", chunk, session.getId(), e.getMessage());
+            fail(session, e.getMessage());
+        } catch (WorkerException e) {
+            logger.error("Transcription of chunk {} failed: {}", chunk, e.getMessage());
+            fail(session, e.isTimeout() ? "Transcription timed out" : "Transcription failed: " + e.getMessage());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            logger.error("Error processing chunk {} of streaming session {}: {}", chunk, session.getId(), e.getMessage(), e);
+            fail(session, "Failed to process audio: " + e.getMessage());
+        } finally {
+            if (chunkFile.exists() && !chunkFile.delete()) {
+                logger.warn("Failed to delete temp file: {}", chunkFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private void formatSession(StreamingSession session) {
+        if (session.isClosed()) {
+            return;
+        }
+        String transcription = session.getTranscription();
+        Map<String, String> notes;
+        try (FairScheduler.Permit permit = acquire(session)) {
+            notes = new HashMap<>(notePipeline.formatText(
+                    transcription.isEmpty() ? "No transcription generated" : transcription,
+                    session.getUserId(), session.getConversationHistory(), session.getConversationId()));
+            notes.put("queueWaitMs", String.valueOf(permit.getQueueWaitMs()));
+        } catch (SchedulerRejectedException e) {
+            logger.warn("No slot to format streaming session {}: {}", session.getId(), e.getMessage());
+            fail(session, e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(session, "Formatting was interrupted");
+            return;
+        }
+        if (notes.containsKey("error")) {
+            fail(session, notes.get("error"));
+            return;
+        }
+        notes.put("transcription", transcription.isEmpty() ? "No transcription generated" : transcription);
+        session.close("notes", notes);
+        logger.info("Streaming session {} finished", session.getId());
+    }
+
+    private FairScheduler.Permit acquire(StreamingSession session) throws InterruptedException {
+        return fairScheduler.acquire(session.getUserId(), Duration.ofSeconds(maxQueueWaitSeconds));
+    }
+
+    private void fail(StreamingSession session, String error) {
+        session.close("error", Map.of("error", error));
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.echotype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Purges note tombstones older than {@code retention-days}. Each batch of at most
+ * {@code batch-size} rows is one statement in its own transaction, skipping rows another
+ * transaction holds, with a pause between batches so a large backlog never locks much at once.
+ * The highest purged version per user goes to {@code note_purge}, which
+ * {@link NoteSyncService#changesSince} uses to tell clients that fell behind to resync.
+ */
+@Component
+public class TombstoneCompactor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TombstoneCompactor.class);
+
+    private static final String PURGE_SQL = """
+            WITH purged AS (
+                DELETE FROM note WHERE id IN (
+                    SELECT id FROM note
+                    WHERE is_deleted AND deleted_at < ?
+                    ORDER BY deleted_at
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED)
+                RETURNING user_id, sync_version
+            ), watermark AS (
+                INSERT INTO note_purge (user_id, purged_through)
+                SELECT user_id, max(sync_version) FROM purged WHERE user_id IS NOT NULL GROUP BY user_id
+                ON CONFLICT (user_id) DO UPDATE
+                    SET purged_through = GREATEST(note_purge.purged_through, EXCLUDED.purged_through)
+            )
+            SELECT count(*) FROM purged
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Value("${echotype.compaction.enabled:true}")
+    private boolean enabled;
+
+    @Value("${echotype.compaction.retention-days:30}")
+    private long retentionDays;
+
+    @Value("${echotype.compaction.batch-size:500}")
+    private int batchSize;
+
+    @Value("${echotype.compaction.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    @Value("${echotype.compaction.max-batches:100}")
+    private int maxBatches;
+
+    @Scheduled(initialDelayString = "${echotype.compaction.initial-delay-ms:300000}",
+            fixedDelayString = "${echotype.compaction.interval-ms:3600000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(Duration.ofDays(retentionDays)));
+        long total = 0;
+        try {
+            for (int batch = 0; batch < maxBatches; batch++) {
+                Long purged = jdbcTemplate.queryForObject(PURGE_SQL, Long.class, cutoff, batchSize);
+                long count = purged == null ? 0 : purged;
+                total += count;
+                metrics.tombstonesPurged(count);
+                if (count < batchSize) {
+                    break;
+                }
+                Thread.sleep(batchPauseMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Tombstone compaction failed after {} notes: {}", total, e.getMessage());
+            return;
+        }
+        if (total > 0) {
+            logger.info("Purged {} note tombstones older than {} days", total, retentionDays);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.echotype;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An asynchronous transcription. Besides being polled, a job pushes its progress to
+ * Server-Sent Event subscribers:
+ * <ul>
+ *   <li>{@code status} - the current status payload, sent once on subscribing</li>
+ *   <li>{@code stage} - a pipeline stage started, e.g. {@code transcribe}, {@code inference}, {@code format}</li>
+ *   <li>{@code progress} - percent done within the current stage, sent when it changes</li>
+ *   <li>{@code result} - the final status payload; the stream ends</li>
+ * </ul>
+ */
+public class TranscriptionJob implements ProgressListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscriptionJob.class);
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final Long userId;
+    private final String conversationId;
+    private final Instant submittedAt = Instant.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile Map<String, String> result;
+    private volatile Instant finishedAt;
+    private volatile String stage;
+    private volatile int percent;
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+
+    public TranscriptionJob(String id, Long userId, String conversationId) {
+        this.id = id;
+        this.userId = userId;
+        this.conversationId = conversationId;
+    }
+
+    public void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    public synchronized void finish(Map<String, String> result) {
+        this.result = result;
+        this.finishedAt = Instant.now();
+        this.status = result.containsKey("error") ? Status.FAILED : Status.COMPLETED;
+        Map<String, String> response = toResponse();
+        for (SseEmitter emitter : subscribers) {
+            if (deliver(emitter, "result", response)) {
+                emitter.complete();
+            }
+        }
+        subscribers.clear();
+    }
+
+    @Override
+    public void stage(String stage) {
+        this.stage = stage;
+        this.percent = 0;
+        publish("stage", Map.of("stage", stage));
+    }
+
+    @Override
+    public void progress(int done, int total) {
+        if (total <= 0) {
+            return;
+        }
+        int current = (int) Math.min(100, 100L * done / total);
+        if (current != percent) {
+            percent = current;
+            publish("progress", Map.of("stage", String.valueOf(stage), "percent", current));
+        }
+    }
+
+    /**
+     * Streams this job's progress to {@code emitter}, starting with its current status. A
+     * finished job sends its result right away.
+     */
+    public synchronized void subscribe(SseEmitter emitter) {
+        if (isFinished()) {
+            if (deliver(emitter, "result", toResponse())) {
+                emitter.complete();
+            }
+            return;
+        }
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribers.remove(emitter));
+        subscribers.add(emitter);
+        deliver(emitter, "status", toResponse());
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    /**
+     * The status payload returned to clients. Once the job is finished it also carries the
+     * same fields the synchronous {@code /transcribe} endpoint returns.
+     */
+    public Map<String, String> toResponse() {
+        // Read status before result: finish() publishes the result before the status
+        Status current = status;
+        Map<String, String> response = new HashMap<>();
+        if (current == Status.COMPLETED || current == Status.FAILED) {
+            response.putAll(result);
+        }
+        response.put("jobId", id);
+        response.put("status", current.name());
+        response.put("submittedAt", submittedAt.toString());
+        if (finishedAt != null) {
+            response.put("finishedAt", finishedAt.toString());
+        }
+        if (current == Status.RUNNING && stage != null) {
+            response.put("stage", stage);
+            response.put("progress", String.valueOf(percent));
+        }
+        return response;
+    }
+
+    public String getId() { return id; }
+    public Long getUserId() { return userId; }
+    public String getConversationId() { return conversationId; }
+    public Status getStatus() { return status; }
+    public Instant getSubmittedAt() { return submittedAt; }
+    public Instant getFinishedAt() { return finishedAt; }
+
+    private void publish(String name, Object data) {
+        for (SseEmitter emitter : subscribers) {
+            deliver(emitter, name, data);
+        }
+    }
+
+    private boolean deliver(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Transcription job {} lost a progress subscriber: {}", id, e.getMessage());
+            subscribers.remove(emitter);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.echotype;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@code /transcribe} work in the background so request threads return immediately.
+ * Each job gets a virtual thread that waits for a {@link FairScheduler} slot alongside the
+ * synchronous requests, so no more jobs run than there are transcribe workers, and then waits
+ * for a worker as long as its transcription may take rather than {@code borrow-timeout-seconds};
+ * beyond {@code queue-capacity} unfinished jobs, new ones are rejected.
+ * Finished jobs are kept for {@code result-ttl-minutes} so clients can poll for the result.
+ */
+@Service
+public class TranscriptionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscriptionJobService.class);
+
+    @Autowired
+    private NotePipeline notePipeline;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Autowired
+    private FairScheduler fairScheduler;
+
+    @Value("${echotype.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${echotype.jobs.result-ttl-minutes:30}")
+    private long resultTtlMinutes;
+
+    @Value("${echotype.jobs.progress-timeout-minutes:30}")
+    private long progressTimeoutMinutes;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, TranscriptionJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        metrics.gauge("echotype.jobs.in.flight", pending::get);
+    }
+
+    /**
+     * Queues a job for an audio file the caller has already spooled to disk. The job owns the
+     * file from here on and deletes it when done; on rejection the caller keeps it.
+     */
+    public TranscriptionJob submit(File audioFile, Long userId, String conversationHistory, String conversationId) {
+        if (pending.incrementAndGet() > queueCapacity) {
+            pending.decrementAndGet();
+            throw new JobRejectedException("Too many pending transcription jobs, retry later");
+        }
+        TranscriptionJob job = new TranscriptionJob(UUID.randomUUID().toString(), userId, conversationId);
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job, audioFile, conversationHistory));
+        logger.info("Queued transcription job {} for userId: {}, pending jobs: {}", job.getId(), userId, pending.get());
+        return job;
+    }
+
+    public Optional<TranscriptionJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    public SseEmitter subscribe(TranscriptionJob job) {
+        SseEmitter emitter = new SseEmitter(Duration.ofMinutes(progressTimeoutMinutes).toMillis());
+        job.subscribe(emitter);
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${echotype.jobs.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(resultTtlMinutes));
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(TranscriptionJob job, File audioFile, String conversationHistory) {
+        // Accepted jobs wait for a slot as long as it takes; the queue is already bounded
+        try (FairScheduler.Permit permit = fairScheduler.acquire(job.getUserId(), null)) {
+            job.markRunning();
+            logger.info("Running transcription job {} after {} ms in the queue", job.getId(), permit.getQueueWaitMs());
+            Map<String, String> result = new HashMap<>(
+                    notePipeline.transcribeAndFormat(audioFile, job.getUserId(), conversationHistory, job.getConversationId(), job));
+            result.put("queueWaitMs", String.valueOf(permit.getQueueWaitMs()));
+            job.finish(result);
+            logger.info("Transcription job {} finished with status {}", job.getId(), job.getStatus());
+        } catch (InterruptedException e) {
+            job.finish(Map.of("error", "Transcription job was cancelled"));
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Without a terminal state the job would stay RUNNING and never be evicted
+            logger.error("Transcription job {} failed: {}", job.getId(), e.getMessage(), e);
+            job.finish(Map.of("error", "Transcription job failed: " + e.getMessage()));
+        } finally {
+            pending.decrementAndGet();
+            if (audioFile.exists() && !audioFile.delete()) {
+                logger.warn("Failed to delete temp file: {}", audioFile.getAbsolutePath());
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.echotype;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache for the full note and conversation lists of a user, which clients fetch
+ * on every screen open. Entries expire after {@code ttl-seconds}, the least recently used go
+ * beyond {@code max-entries}, and every write drops the lists of the users it touched once
+ * its transaction commits.
+ * <p>
+ * ETags are derived from the data: the highest {@code sync_version} of the user's notes, never
+ * below the {@code note_purge} watermark so purging a tombstone cannot bring back an old tag,
+ * and the per-user version the {@code conversation_version} triggers bump on every
+ * conversation write. A list gets the version read before it was loaded, and {@code If-None-Match} is
+ * answered from one indexed lookup of the current version, so a 304 needs neither the rows
+ * nor this instance's cache.
+ * <p>
+ * With more than one instance, set {@code notify-channel}: invalidations are then also sent
+ * with Postgres {@code NOTIFY} (delivered on commit) and each instance listens on the channel
+ * over a connection of its own. If that connection drops, the whole cache is cleared, since
+ * notifications sent in the meantime are lost.
+ */
+@Component
+public class UserListCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserListCache.class);
+
+    public static final String NOTES = "notes";
+    public static final String CONVERSATIONS = "conversations";
+
+    private static final Map<String, String> VERSION_SQL = Map.of(
+            // Purging tombstones can lower the max, so it is never taken below what was purged
+            NOTES, """
+                    SELECT GREATEST(
+                        (SELECT max(sync_version) FROM note WHERE user_id = u.id),
+                        (SELECT purged_through FROM note_purge WHERE user_id = u.id),
+                        0)
+                    FROM (SELECT CAST(? AS BIGINT) AS id) u
+                    """,
+            CONVERSATIONS, "SELECT coalesce(max(version), 0) FROM conversation_version WHERE user_id = ?");
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${echotype.list-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${echotype.list-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${echotype.list-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${echotype.list-cache.notify-channel:}")
+    private String notifyChannel;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // Bumped on every invalidation, so a list loaded concurrently is not stored stale
+    private long generation;
+    private final String instanceId = UUID.randomUUID().toString();
+    private volatile boolean running = true;
+    private Thread listener;
+
+    private static final class Entry {
+        final List<?> rows;
+        final long loadedAt;
+        final String etag;
+        // Serialized size, measured the first time a 304 saves sending it
+        volatile long bytes = -1;
+
+        Entry(List<?> rows, long loadedAt, String etag) {
+            this.rows = rows;
+            this.loadedAt = loadedAt;
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * A user's list and its ETag, which is null when the version of the list could not be read.
+     */
+    public record Listing<T>(List<T> rows, String etag) {
+    }
+
+    @PostConstruct
+    public void init() {
+        metrics.gauge("echotype.cache.lists.size", this::size);
+        if (!notifyChannel.isBlank()) {
+            listener = Thread.ofPlatform().daemon().name("list-cache-listener").start(this::listen);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    /**
+     * Returns the cached list for the user, or loads it with {@code loader} and caches it.
+     */
+    public <T> List<T> get(String kind, Long userId, Supplier<List<T>> loader) {
+        return lookup(kind, userId, loader).rows();
+    }
+
+    /**
+     * Like {@link #get}, also returning the ETag of the list.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Listing<T> lookup(String kind, Long userId, Supplier<List<T>> loader) {
+        if (!enabled) {
+            return new Listing<>(loader.get(), null);
+        }
+        String key = kind + ":" + userId;
+        long loadedAt;
+        synchronized (entries) {
+            Entry entry = live(key);
+            if (entry != null) {
+                metrics.listCache(kind, true);
+                return new Listing<>((List<T>) entry.rows, entry.etag);
+            }
+            loadedAt = generation;
+        }
+        metrics.listCache(kind, false);
+
+        // Read first: a write committing in between leaves an older tag, which only costs a resend
+        String etag = currentTag(kind, userId);
+        List<T> rows = List.copyOf(loader.get());
+        synchronized (entries) {
+            if (generation == loadedAt) {
+                entries.put(key, new Entry(rows, System.nanoTime(), etag));
+                var eldest = entries.entrySet().iterator();
+                while (entries.size() > maxEntries && eldest.hasNext()) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return new Listing<>(rows, etag);
+    }
+
+    /**
+     * Checks an {@code If-None-Match} header against the current version of the user's list.
+     *
+     * @return the ETag to send with a 304, or null if the list has to be sent
+     */
+    public String notModified(String kind, Long userId, String ifNoneMatch) {
+        if (!enabled || ifNoneMatch == null) {
+            return null;
+        }
+        String etag = currentTag(kind, userId);
+        if (etag == null || !matches(ifNoneMatch, etag)) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = live(kind + ":" + userId);
+        }
+        // The size saved is only known when this instance holds the same version
+        if (entry != null && etag.equals(entry.etag)) {
+            if (entry.bytes < 0) {
+                try {
+                    entry.bytes = objectMapper.writeValueAsBytes(entry.rows).length;
+                } catch (JsonProcessingException e) {
+                    entry.bytes = 0;
+                }
+            }
+            metrics.bytesSaved("not_modified", entry.bytes);
+        }
+        return etag;
+    }
+
+    /**
+     * Drops the users' lists of this kind. Inside a transaction that happens after it commits,
+     * so a concurrent read cannot cache what was there before.
+     */
+    public void invalidate(String kind, Collection<Long> userIds) {
+        List<Long> users = userIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (users.isEmpty()) {
+            return;
+        }
+        if (!notifyChannel.isBlank()) {
+            for (Long userId : users) {
+                jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", notifyChannel, instanceId + ":" + kind + ":" + userId);
+            }
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(kind, users);
+                }
+            });
+        } else {
+            evict(kind, users);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private Entry live(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.loadedAt >= ttlSeconds * 1_000_000_000L) {
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * The weak ETag of the user's list as stored now, or null if the version cannot be read.
+     */
+    private String currentTag(String kind, Long userId) {
+        try {
+            Long version = jdbcTemplate.queryForObject(VERSION_SQL.get(kind), Long.class, userId);
+            return "W/\"" + kind + "-" + version + "\"";
+        } catch (DataAccessException e) {
+            logger.debug("Could not read the {} version of userId {}: {}", kind, userId, e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        // Weak comparison, as If-None-Match requires
+        String opaque = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.strip();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evict(String kind, Collection<Long> userIds) {
+        synchronized (entries) {
+            generation++;
+            for (Long userId : userIds) {
+                entries.remove(kind + ":" + userId);
+            }
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN \"" + notifyChannel.replace("\"", "\"\"") + "\"");
+                }
+                logger.info("Listening for list cache invalidations on channel {}", notifyChannel);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(10_000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            onNotification(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("List cache invalidation listener failed, clearing cache and reconnecting: {}", e.getMessage());
+                clear();
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void onNotification(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3 || parts[0].equals(instanceId)) {
+            return;
+        }
+        try {
+            evict(parts[1], List.of(Long.valueOf(parts[2])));
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring malformed list cache invalidation: {}", payload);
+        }
+    }
+}
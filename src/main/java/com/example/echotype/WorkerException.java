@@ -0,0 +1,18 @@
+package com.example.echotype;
+
+import java.io.IOException;
+
+public class WorkerException extends IOException {
+    private final boolean timeout;
+
+    public WorkerException(String message) {
+        this(message, false);
+    }
+
+    public WorkerException(String message, boolean timeout) {
+        super(message);
+        this.timeout = timeout;
+    }
+
+    public boolean isTimeout() { return timeout; }
+}
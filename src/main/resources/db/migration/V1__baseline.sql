@@ -0,0 +1,22 @@
+-- Schema as it existed before migrations were introduced. Existing databases are
+-- baselined at this version (spring.flyway.baseline-on-migrate), so this only runs
+-- against an empty database.
+CREATE TABLE IF NOT EXISTS note (
+    id TEXT PRIMARY KEY,
+    title TEXT,
+    content TEXT,
+    user_id BIGINT,
+    timestamp TEXT,
+    is_synced BOOLEAN,
+    is_deleted BOOLEAN
+);
+
+CREATE TABLE IF NOT EXISTS conversation (
+    id BIGSERIAL PRIMARY KEY,
+    conversation_id TEXT,
+    user_id BIGINT,
+    message_text TEXT,
+    sender TEXT,
+    timestamp TEXT,
+    pinned BOOLEAN
+);
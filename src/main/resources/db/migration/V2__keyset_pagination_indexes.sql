@@ -0,0 +1,3 @@
+-- Keyset pagination walks each user's rows in primary-key order
+CREATE INDEX IF NOT EXISTS idx_note_user_id_id ON note (user_id, id);
+CREATE INDEX IF NOT EXISTS idx_conversation_user_id_id ON conversation (user_id, id);
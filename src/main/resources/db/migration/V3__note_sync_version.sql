@@ -0,0 +1,26 @@
+-- Every insert or update of a note takes the next value of a global sequence, so the
+-- versions of one user's notes only ever grow and a client can ask for "changes since N".
+CREATE SEQUENCE IF NOT EXISTS note_sync_version_seq;
+
+ALTER TABLE note ADD COLUMN IF NOT EXISTS sync_version BIGINT;
+UPDATE note SET sync_version = nextval('note_sync_version_seq') WHERE sync_version IS NULL;
+ALTER TABLE note ALTER COLUMN sync_version SET DEFAULT nextval('note_sync_version_seq');
+ALTER TABLE note ALTER COLUMN sync_version SET NOT NULL;
+
+UPDATE note SET is_deleted = false WHERE is_deleted IS NULL;
+ALTER TABLE note ALTER COLUMN is_deleted SET DEFAULT false;
+ALTER TABLE note ALTER COLUMN is_deleted SET NOT NULL;
+
+CREATE OR REPLACE FUNCTION note_bump_sync_version() RETURNS trigger AS $$
+BEGIN
+    NEW.sync_version := nextval('note_sync_version_seq');
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS note_sync_version ON note;
+CREATE TRIGGER note_sync_version
+    BEFORE INSERT OR UPDATE ON note
+    FOR EACH ROW EXECUTE FUNCTION note_bump_sync_version();
+
+CREATE INDEX IF NOT EXISTS idx_note_user_id_sync_version ON note (user_id, sync_version);
@@ -0,0 +1,4 @@
+-- Conversation ids are now allocated by Hibernate in blocks of 50 (pooled optimizer), which
+-- lets inserts be batched. The sequence increment has to match the allocation size; the
+-- next block starts past every existing id, so nothing already stored can collide.
+ALTER SEQUENCE conversation_id_seq INCREMENT BY 50;
@@ -0,0 +1,27 @@
+-- Timestamps were free-form TEXT. Convert them to timestamptz: ISO-8601 strings keep their
+-- offset, strings without one are taken as UTC, all-digit strings are epoch milliseconds and
+-- anything unparseable becomes NULL rather than failing the migration.
+SET LOCAL TimeZone = 'UTC';
+
+CREATE OR REPLACE FUNCTION echotype_parse_timestamp(value TEXT) RETURNS timestamptz AS $$
+BEGIN
+    IF value IS NULL OR btrim(value) = '' THEN
+        RETURN NULL;
+    ELSIF btrim(value) ~ '^[0-9]+$' THEN
+        RETURN to_timestamp(btrim(value)::BIGINT / 1000.0);
+    END IF;
+    RETURN btrim(value)::timestamptz;
+EXCEPTION WHEN others THEN
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+ALTER TABLE note ALTER COLUMN timestamp TYPE timestamptz USING echotype_parse_timestamp(timestamp);
+ALTER TABLE conversation ALTER COLUMN timestamp TYPE timestamptz USING echotype_parse_timestamp(timestamp);
+
+DROP FUNCTION echotype_parse_timestamp(TEXT);
+
+-- Time-range queries per user, and per-conversation lookups in time order
+CREATE INDEX IF NOT EXISTS idx_note_user_id_timestamp ON note (user_id, timestamp);
+CREATE INDEX IF NOT EXISTS idx_conversation_user_id_timestamp ON conversation (user_id, timestamp);
+CREATE INDEX IF NOT EXISTS idx_conversation_conversation_id_timestamp ON conversation (conversation_id, timestamp);
@@ -0,0 +1,14 @@
+-- Search vectors are generated columns, so Postgres keeps them up to date on every insert and
+-- update, whether it comes from JPA, the batch upsert or anything else. Note titles rank above
+-- their content.
+ALTER TABLE note ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('english', coalesce(content, '')), 'B')
+    ) STORED;
+
+ALTER TABLE conversation ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (to_tsvector('english', coalesce(message_text, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_note_search_vector ON note USING GIN (search_vector);
+CREATE INDEX IF NOT EXISTS idx_conversation_search_vector ON conversation USING GIN (search_vector);
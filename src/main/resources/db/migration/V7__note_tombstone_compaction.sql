@@ -0,0 +1,36 @@
+-- Tombstones are purged once they are older than the retention period. deleted_at records
+-- when a note became a tombstone; it is maintained by a trigger so every write path sets it.
+ALTER TABLE note ADD COLUMN IF NOT EXISTS deleted_at timestamptz;
+
+-- Existing tombstones start their retention now; the sync trigger is paused so this does
+-- not hand them new versions and send them to every client again.
+ALTER TABLE note DISABLE TRIGGER note_sync_version;
+UPDATE note SET deleted_at = now() WHERE is_deleted AND deleted_at IS NULL;
+ALTER TABLE note ENABLE TRIGGER note_sync_version;
+
+CREATE OR REPLACE FUNCTION note_stamp_deleted_at() RETURNS trigger AS $$
+BEGIN
+    IF NOT NEW.is_deleted THEN
+        NEW.deleted_at := NULL;
+    ELSIF TG_OP = 'INSERT' OR NOT OLD.is_deleted THEN
+        NEW.deleted_at := now();
+    ELSE
+        NEW.deleted_at := OLD.deleted_at;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS note_deleted_at ON note;
+CREATE TRIGGER note_deleted_at
+    BEFORE INSERT OR UPDATE ON note
+    FOR EACH ROW EXECUTE FUNCTION note_stamp_deleted_at();
+
+CREATE INDEX IF NOT EXISTS idx_note_deleted_at ON note (deleted_at) WHERE is_deleted;
+
+-- Highest sync version purged per user. A client whose "since" is below it may have missed
+-- a deletion and has to sync again from scratch.
+CREATE TABLE IF NOT EXISTS note_purge (
+    user_id BIGINT PRIMARY KEY,
+    purged_through BIGINT NOT NULL
+);
@@ -0,0 +1,51 @@
+-- A version per user that every write to their conversations bumps, so the conversation
+-- list can carry an ETag derived from the data. The triggers are per statement, so a batch
+-- insert bumps each user it touches once rather than once per row.
+CREATE SEQUENCE IF NOT EXISTS conversation_version_seq;
+
+CREATE TABLE IF NOT EXISTS conversation_version (
+    user_id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+CREATE OR REPLACE FUNCTION conversation_bump_version() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO conversation_version (user_id, version)
+        SELECT user_id, nextval('conversation_version_seq')
+        FROM (SELECT DISTINCT user_id FROM new_rows WHERE user_id IS NOT NULL) touched
+        ON CONFLICT (user_id) DO UPDATE SET version = EXCLUDED.version;
+    ELSIF TG_OP = 'DELETE' THEN
+        INSERT INTO conversation_version (user_id, version)
+        SELECT user_id, nextval('conversation_version_seq')
+        FROM (SELECT DISTINCT user_id FROM old_rows WHERE user_id IS NOT NULL) touched
+        ON CONFLICT (user_id) DO UPDATE SET version = EXCLUDED.version;
+    ELSE
+        -- An update can move a message to another user, so both sides are bumped
+        INSERT INTO conversation_version (user_id, version)
+        SELECT user_id, nextval('conversation_version_seq')
+        FROM (SELECT user_id FROM old_rows WHERE user_id IS NOT NULL
+              UNION SELECT user_id FROM new_rows WHERE user_id IS NOT NULL) touched
+        ON CONFLICT (user_id) DO UPDATE SET version = EXCLUDED.version;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS conversation_version_insert ON conversation;
+CREATE TRIGGER conversation_version_insert
+    AFTER INSERT ON conversation
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION conversation_bump_version();
+
+DROP TRIGGER IF EXISTS conversation_version_update ON conversation;
+CREATE TRIGGER conversation_version_update
+    AFTER UPDATE ON conversation
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION conversation_bump_version();
+
+DROP TRIGGER IF EXISTS conversation_version_delete ON conversation;
+CREATE TRIGGER conversation_version_delete
+    AFTER DELETE ON conversation
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION conversation_bump_version();
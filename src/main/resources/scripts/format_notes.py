@@ -11,6 +11,87 @@ logging.basicConfig(
 )
 logger = logging.getLogger(__name__)
 
+def build_prompt(transcription, conversation_history):
+    return f"""
+You are an expert AI study assistant designed to generate detailed, structured academic notes at a high school or early college level, rivaling the quality of Grok or advanced GPT models. Support English and Roman Urdu inputs, responding in the input language with a formal, academic tone. Avoid informal phrases (e.g., "bro," "cool," "let's chat").
+
+- **Input Handling**:
+  - For vague or incomplete inputs, respond only with: "Please specify a topic (e.g., math, history) for detailed notes."
+  - For academic topics, generate comprehensive notes in Markdown with LaTeX for math, including a numerical example where applicable.
+  - For direct problems (e.g., "solve y >= 7"), provide a step-by-step solution in LaTeX.
+- **Context Awareness**:
+  - Leverage the conversation history (format: "Sender: Message") to maintain continuity and relevance.
+- **Content Structure**:
+  - Use Markdown:
+    - `#` for the topic title (e.g., "# Linear Algebra Notes").
+    - `##` for sections (e.g., "## Key Concepts", "## Example", "## Resources").
+    - `-` for bullet points (e.g., "- Vectors: ..."). Use plain text for bullet titles, never `*` or `**`.
+    - Paragraphs for detailed explanations.
+    - For math or science topics, include a "## Example" section with a numerical problem (e.g., solve equations, compute a derivative).
+  - For Roman Urdu, blend simple language with English terms (e.g., "Matrix ek rectangular array hota hai").
+- **LaTeX Formatting**:
+  - Use `$...$` for inline math and `$$...$$` for display math.
+  - Use `\\begin{{bmatrix}}...\\end{{bmatrix}}` for matrices.
+  - Use `\\begin{{align}}...\\end{{align}}` for equation systems.
+  - Use `\\langle`, `\\rangle` for vectors.
+  - Ensure LaTeX is valid, balanced, and renderable with flutter_math.
+- **External Resources**:
+  - For specific topics, include a "## Resources" section with:
+    - A Google search link (e.g., "[Linear algebra basics](https://www.google.com/search?q=linear+algebra+basics+tutorial)").
+    - A YouTube link from channels like Khan Academy or 3Blue1Brown (e.g., "[Linear Algebra by 3Blue1Brown](https://www.youtube.com/watch?v=fNk_zzaMoSs)").
+  - Omit resources for vague inputs.
+- **Output Requirements**:
+  - Produce clean, UTF-8 compatible Markdown with valid LaTeX.
+  - Use `-` for all bullet points.
+  - Ensure compatibility with Flutter's latext package.
+
+**Conversation History**:
+{conversation_history}
+
+**Transcription**:
+{transcription}
+
+Generate notes following these guidelines. Use the history for context. For math topics, include a LaTeX example. Ensure all output is professional and structured.
+"""
+
+def configure_model():
+    api_key = os.getenv("GEMINI_API_KEY")
+    if not api_key:
+        raise RuntimeError("GEMINI_API_KEY required")
+
+    logger.info("Configuring Gemini API")
+    genai.configure(api_key=api_key)
+    return genai.GenerativeModel("gemini-1.5-flash")
+
+def run_worker():
+    import worker_protocol
+
+    # Configure the client once and reuse it for every request on this worker
+    with worker_protocol.timed("model_setup"):
+        model = configure_model()
+
+    def handle(request, emit):
+        transcription = (request.get("text") or "").strip()
+        conversation_history = (request.get("history") or "").strip()
+        conversation_id = request.get("conversationId")
+        logger.info(f"Formatting request for conversationId: {conversation_id}")
+
+        if not transcription:
+            logger.warning("Empty transcription")
+            return "Please specify a topic (e.g., math, history) for detailed notes."
+
+        logger.info(f"Processing transcription: '{transcription[:50]}...' (length: {len(transcription)})")
+        logger.info(f"Conversation history: '{conversation_history[:50]}...' (length: {len(conversation_history)})")
+
+        logger.info("Generating content with Gemini API")
+        with worker_protocol.timed("gemini"):
+            response = model.generate_content(build_prompt(transcription, conversation_history))
+        formatted_notes = response.text.strip()
+        logger.info(f"Gemini response: '{formatted_notes[:50]}...'")
+        return formatted_notes
+
+    worker_protocol.serve(handle)
+
 def main():
     try:
         if len(sys.argv) != 4:
@@ -57,47 +138,7 @@ def main():
         genai.configure(api_key=api_key)
         model = genai.GenerativeModel("gemini-1.5-flash")
 
-        prompt = f"""
-You are an expert AI study assistant designed to generate detailed, structured academic notes at a high school or early college level, rivaling the quality of Grok or advanced GPT models. Support English and Roman Urdu inputs, responding in the input language with a formal, academic tone. Avoid informal phrases (e.g., "bro," "cool," "let's chat").
-
-- **Input Handling**:
-  - For vague or incomplete inputs, respond only with: "Please specify a topic (e.g., math, history) for detailed notes."
-  - For academic topics, generate comprehensive notes in Markdown with LaTeX for math, including a numerical example where applicable.
-  - For direct problems (e.g., "solve y >= 7"), provide a step-by-step solution in LaTeX.
-- **Context Awareness**:
-  - Leverage the conversation history (format: "Sender: Message") to maintain continuity and relevance.
-- **Content Structure**:
-  - Use Markdown:
-    - `#` for the topic title (e.g., "# Linear Algebra Notes").
-    - `##` for sections (e.g., "## Key Concepts", "## Example", "## Resources").
-    - `-` for bullet points (e.g., "- Vectors: ..."). Use plain text for bullet titles, never `*` or `**`.
-    - Paragraphs for detailed explanations.
-    - For math or science topics, include a "## Example" section with a numerical problem (e.g., solve equations, compute a derivative).
-  - For Roman Urdu, blend simple language with English terms (e.g., "Matrix ek rectangular array hota hai").
-- **LaTeX Formatting**:
-  - Use `$...$` for inline math and `$$...$$` for display math.
-  - Use `\\begin{{bmatrix}}...\\end{{bmatrix}}` for matrices.
-  - Use `\\begin{{align}}...\\end{{align}}` for equation systems.
-  - Use `\\langle`, `\\rangle` for vectors.
-  - Ensure LaTeX is valid, balanced, and renderable with flutter_math.
-- **External Resources**:
-  - For specific topics, include a "## Resources" section with:
-    - A Google search link (e.g., "[Linear algebra basics](https://www.google.com/search?q=linear+algebra+basics+tutorial)").
-    - A YouTube link from channels like Khan Academy or 3Blue1Brown (e.g., "[Linear Algebra by 3Blue1Brown](https://www.youtube.com/watch?v=fNk_zzaMoSs)").
-  - Omit resources for vague inputs.
-- **Output Requirements**:
-  - Produce clean, UTF-8 compatible Markdown with valid LaTeX.
-  - Use `-` for all bullet points.
-  - Ensure compatibility with Flutter's latext package.
-
-**Conversation History**:
-{conversation_history}
-
-**Transcription**:
-{transcription}
-
-Generate notes following these guidelines. Use the history for context. For math topics, include a LaTeX example. Ensure all output is professional and structured.
-"""
+        prompt = build_prompt(transcription, conversation_history)
         logger.info("Generating content with Gemini API")
         response = model.generate_content(prompt)
         formatted_notes = response.text.strip()
@@ -112,4 +153,7 @@ Generate notes following these guidelines. Use the history for context. For math
 
 if __name__ == "__main__":
     logger.info("Starting format_notes.py")
-    main()
+    if "--worker" in sys.argv[1:]:
+        run_worker()
+    else:
+        main()
@@ -1,6 +1,12 @@
+import io
+import re
 import sys
 import os
+import types
 import logging
+import threading
+import subprocess
+from contextlib import contextmanager
 import whisper
 
 # Configure logging
@@ -11,6 +17,166 @@ logging.basicConfig(
 )
 logger = logging.getLogger(__name__)
 
+def load_model():
+    logger.info("Loading Whisper model")
+    return whisper.load_model("base", download_root=os.path.expanduser("~/.cache/whisper"))
+
+# Whisper prints "[00:01.000 --> 00:04.500] text" for each segment it decodes when verbose
+SEGMENT_LINE = re.compile(r"^\[((?:\d+:)?\d+:\d+\.\d+) --> ((?:\d+:)?\d+:\d+\.\d+)\]\s?(.*)$")
+
+def parse_timestamp(value):
+    seconds = 0.0
+    for part in value.split(":"):
+        seconds = seconds * 60 + float(part)
+    return seconds
+
+class SegmentWriter(io.TextIOBase):
+    """Turns Whisper's verbose segment lines into segment events as they are printed."""
+
+    def __init__(self, emit, passthrough):
+        self.emit = emit
+        self.passthrough = passthrough
+        self.pending = ""
+
+    def write(self, text):
+        self.pending += text
+        while "\n" in self.pending:
+            line, self.pending = self.pending.split("\n", 1)
+            match = SEGMENT_LINE.match(line)
+            if match:
+                self.emit({
+                    "event": "segment",
+                    "start": parse_timestamp(match.group(1)),
+                    "end": parse_timestamp(match.group(2)),
+                    "text": match.group(3).strip(),
+                })
+            elif line:
+                self.passthrough.write(line + "\n")
+        return len(text)
+
+@contextmanager
+def progress_frames(emit):
+    """Report Whisper's progress bar as progress frames instead of drawing it on stderr.
+
+    whisper.transcribe creates a tqdm bar over the audio frames it decodes and advances it
+    after every 30-second window.
+    """
+    module = sys.modules.get("whisper.transcribe")
+    if module is None or not hasattr(module, "tqdm"):
+        yield
+        return
+    original = module.tqdm
+
+    class ProgressBar(original.tqdm):
+        def __init__(self, *args, **kwargs):
+            kwargs["disable"] = True
+            super().__init__(*args, **kwargs)
+            self.done = 0
+            emit.progress(0, self.total or 0)
+
+        def update(self, n=1):
+            self.done += n
+            emit.progress(self.done, self.total or 0)
+
+    module.tqdm = types.SimpleNamespace(tqdm=ProgressBar)
+    try:
+        yield
+    finally:
+        module.tqdm = original
+
+def decode_stream(chunks):
+    """Decode audio piped in chunk by chunk to 16 kHz mono, as whisper.load_audio does for a
+    file, without writing it to disk first. Containers that need seeking, such as MP4 with
+    its index at the end, cannot be decoded from a pipe; those have to be sent as files.
+    """
+    import numpy as np
+
+    command = [
+        "ffmpeg", "-loglevel", "error", "-threads", "0",
+        "-i", "pipe:0",
+        "-f", "s16le", "-ac", "1", "-acodec", "pcm_s16le", "-ar", str(whisper.audio.SAMPLE_RATE),
+        "pipe:1",
+    ]
+    process = subprocess.Popen(command, stdin=subprocess.PIPE, stdout=subprocess.PIPE, stderr=subprocess.PIPE)
+    output = {}
+
+    def collect(name, stream):
+        output[name] = stream.read()
+
+    readers = [threading.Thread(target=collect, args=(name, stream), daemon=True)
+               for name, stream in (("pcm", process.stdout), ("errors", process.stderr))]
+    for reader in readers:
+        reader.start()
+    try:
+        for chunk in chunks:
+            process.stdin.write(chunk)
+        process.stdin.close()
+    except BrokenPipeError:
+        pass  # ffmpeg gave up; its exit code and stderr say why
+    for reader in readers:
+        reader.join()
+    if process.wait() != 0:
+        raise RuntimeError(f"Failed to decode audio: {output.get('errors', b'').decode(errors='replace').strip()}")
+    return np.frombuffer(output["pcm"], np.int16).flatten().astype(np.float32) / 32768.0
+
+def load_request_audio(request):
+    if request.get("stream"):
+        logger.info("Processing streamed audio")
+        return decode_stream(request["body"])
+
+    audio_file = request["audioFile"]
+    if not os.path.exists(audio_file):
+        raise FileNotFoundError(f"File not found: {audio_file}")
+    logger.info(f"Processing audio file: {audio_file}")
+    return whisper.load_audio(audio_file)
+
+def transcribe_segments(model, audio, emit, timed):
+    emit({"event": "audio", "duration": len(audio) / whisper.audio.SAMPLE_RATE})
+
+    previous = sys.stdout
+    sys.stdout = SegmentWriter(emit, previous)
+    try:
+        with timed("inference"), progress_frames(emit):
+            return model.transcribe(audio, verbose=True)
+    finally:
+        sys.stdout = previous
+
+def limit_threads(argv):
+    """Applies --threads N, so workers sharing the machine do not each start a thread per core."""
+    if "--threads" in argv:
+        import torch
+        torch.set_num_threads(int(argv[argv.index("--threads") + 1]))
+
+def run_worker():
+    import worker_protocol
+
+    limit_threads(sys.argv)
+
+    # Load the model once and keep it for every request on this worker
+    with worker_protocol.timed("model_load"):
+        model = load_model()
+
+    def handle(request, emit):
+        with worker_protocol.timed("audio_decode"):
+            audio = load_request_audio(request)
+
+        if request.get("segments"):
+            result = transcribe_segments(model, audio, emit, worker_protocol.timed)
+        else:
+            with worker_protocol.timed("inference"), progress_frames(emit):
+                result = model.transcribe(audio)
+        transcription = result["text"].strip()
+
+        if not transcription:
+            logger.warning("Empty transcription")
+            # A silent chunk of a streamed or split recording simply adds no text
+            return "" if request.get("segments") or request.get("chunk") else "No transcription generated"
+
+        logger.info(f"Transcription result: '{transcription[:50]}...' (length: {len(transcription)})")
+        return transcription
+
+    worker_protocol.serve(handle)
+
 def main():
     try:
         # Check for audio file
@@ -27,8 +193,7 @@ def main():
             sys.exit(1)
 
         # Load Whisper model (use cached model)
-        logger.info("Loading Whisper model")
-        model = whisper.load_model("base", download_root=os.path.expanduser("~/.cache/whisper"))
+        model = load_model()
         logger.info("Transcribing audio")
         result = model.transcribe(audio_file, language="en")
         transcription = result["text"].strip()
@@ -54,4 +219,7 @@ def main():
 
 if __name__ == "__main__":
     logger.info("Starting transcribe.py")
-    main()
+    if "--worker" in sys.argv[1:]:
+        run_worker()
+    else:
+        main()
@@ -0,0 +1,169 @@
+import sys
+import json
+import time
+import struct
+import logging
+from contextlib import contextmanager
+
+logger = logging.getLogger(__name__)
+
+# Frames are a 4-byte big-endian length followed by a payload. A payload is UTF-8 JSON
+# (first byte "{") or starts with a kind byte:
+#   0x01 progress, to the JVM: two big-endian ints, units done and units in total. Progress
+#        is frequent, so it is kept fixed-size and cheap for the JVM to read.
+#   0x02 body chunk, from the JVM: raw bytes of a request's streamed body, sent right after
+#        a request with "stream": true. A chunk with no bytes ends the body.
+HEADER = struct.Struct(">I")
+PROGRESS = struct.Struct(">Bii")
+PROGRESS_FRAME = 0x01
+CHUNK_FRAME = 0x02
+
+
+# Seconds spent per stage since the last frame that carried them
+_timings = {}
+# Emitter of the request being handled, if any
+_emitter = None
+
+
+@contextmanager
+def timed(stage):
+    """Time a block; the total is reported to the JVM with the next ready/result/error frame.
+
+    During a request, entering the block also sends a stage event.
+    """
+    if _emitter is not None:
+        _emitter({"event": "stage", "stage": stage})
+    start = time.perf_counter()
+    try:
+        yield
+    finally:
+        _timings[stage] = _timings.get(stage, 0.0) + time.perf_counter() - start
+
+
+def take_timings():
+    timings = dict(_timings)
+    _timings.clear()
+    return timings
+
+
+def read_exact(stream, size):
+    data = bytearray()
+    while len(data) < size:
+        chunk = stream.read(size - len(data))
+        if not chunk:
+            return None
+        data.extend(chunk)
+    return bytes(data)
+
+
+def read_frame(stream):
+    header = read_exact(stream, HEADER.size)
+    if header is None:
+        return None
+    (length,) = HEADER.unpack(header)
+    payload = read_exact(stream, length)
+    if payload is None:
+        return None
+    return json.loads(payload.decode("utf-8"))
+
+
+def write_frame(stream, message):
+    payload = json.dumps(message, ensure_ascii=False).encode("utf-8")
+    stream.write(HEADER.pack(len(payload)))
+    stream.write(payload)
+    stream.flush()
+
+
+def read_chunk(stream):
+    header = read_exact(stream, HEADER.size)
+    if header is None:
+        raise EOFError("Input closed in the middle of a streamed body")
+    (length,) = HEADER.unpack(header)
+    payload = read_exact(stream, length)
+    if payload is None or not payload or payload[0] != CHUNK_FRAME:
+        raise ValueError("Expected a body chunk frame")
+    return memoryview(payload)[1:]
+
+
+class Body:
+    """The streamed body of the current request; iterate over it for its chunks."""
+
+    def __init__(self, stream):
+        self.stream = stream
+        self.open = True
+
+    def __iter__(self):
+        while self.open:
+            chunk = read_chunk(self.stream)
+            if not chunk:
+                self.open = False
+                return
+            yield chunk
+
+    def drain(self):
+        # Whatever the handler left unread must not be taken for the next request
+        for _ in self:
+            pass
+
+
+def write_progress(stream, done, total):
+    stream.write(HEADER.pack(PROGRESS.size))
+    stream.write(PROGRESS.pack(PROGRESS_FRAME, done, total))
+    stream.flush()
+
+
+class Emitter:
+    """Sends frames back before the final result: emit(event) for a JSON event and
+    emit.progress(done, total) for a progress frame."""
+
+    def __init__(self, stream):
+        self.stream = stream
+
+    def __call__(self, event):
+        write_frame(self.stream, dict(event, type="event"))
+
+    def progress(self, done, total):
+        write_progress(self.stream, int(done), int(total))
+
+
+def serve(handler):
+    """Run the request loop until the JVM closes stdin.
+
+    The handler is called as handler(request, emit); emit is an Emitter for
+    output that is ready before the final result. For a request with
+    "stream": true, request["body"] is the Body that follows it.
+    stdout is reserved for frames, so anything a library prints is sent to
+    stderr together with the log output.
+    """
+    global _emitter
+    requests = sys.stdin.buffer
+    responses = sys.stdout.buffer
+    sys.stdout = sys.stderr
+
+    emitter = Emitter(responses)
+    write_frame(responses, {"type": "ready", "timings": take_timings()})
+    while True:
+        request = read_frame(requests)
+        if request is None:
+            logger.info("Input closed, worker exiting")
+            return
+
+        if request.get("type") == "ping":
+            write_frame(responses, {"type": "pong"})
+            continue
+
+        body = Body(requests) if request.get("stream") else None
+        if body is not None:
+            request["body"] = body
+        _emitter = emitter
+        take_timings()
+        try:
+            result = handler(request, emitter)
+            write_frame(responses, {"type": "result", "result": result, "timings": take_timings()})
+        except Exception as e:
+            logger.error(f"Error: {str(e)}", exc_info=True)
+            write_frame(responses, {"type": "error", "error": str(e), "timings": take_timings()})
+        finally:
+            _emitter = None
+        if body is not None:
+            body.drain()
@@ -0,0 +1,74 @@
+package com.example.echotype;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AudioChunkerTests {
+
+	@TempDir
+	Path tempDir;
+
+	private AudioChunker newChunker() {
+		AudioChunker chunker = new AudioChunker();
+		ReflectionTestUtils.setField(chunker, "enabled", true);
+		ReflectionTestUtils.setField(chunker, "chunkSeconds", 10.0);
+		ReflectionTestUtils.setField(chunker, "overlapSeconds", 0.5);
+		ReflectionTestUtils.setField(chunker, "searchSeconds", 3.0);
+		return chunker;
+	}
+
+	@Test
+	void cutsAtPausesWithOverlap() throws Exception {
+		AudioChunker chunker = newChunker();
+		// Tone with one-second pauses from 8.5 s and from 17 s, 25 s in all
+		File wav = wav(25, 8.5, 17.0);
+
+		List<AudioChunker.Chunk> chunks = chunker.split(wav);
+
+		assertThat(chunks).hasSize(3);
+		assertThat(chunks.get(0).seconds()).isCloseTo(9.0, within(0.1));
+		assertThat(chunks.get(1).offsetSeconds()).isCloseTo(8.5, within(0.1));
+		assertThat(chunks.get(1).offsetSeconds() + chunks.get(1).seconds()).isCloseTo(17.5, within(0.1));
+		assertThat(chunks.get(2).offsetSeconds() + chunks.get(2).seconds()).isCloseTo(25.0, within(0.01));
+		assertThat(chunks.get(2).file().length())
+				.isEqualTo(AudioPreprocessor.WAV_HEADER_BYTES + Math.round(chunks.get(2).seconds() * 16000) * 2);
+		AudioChunker.delete(chunks);
+	}
+
+	@Test
+	void joinDropsWordsRepeatedAcrossTheOverlap() {
+		String joined = newChunker().join(List.of("So the main idea is", "", "Is that energy, is conserved.",
+				"conserved. Next", "one two three", "one two three"));
+
+		// Only as many words as can be spoken in the half-second overlap are compared
+		assertThat(joined).isEqualTo("So the main idea is that energy, is conserved. Next one two three one two three");
+	}
+
+	private File wav(double seconds, double... pauses) throws Exception {
+		int samples = (int) (seconds * 16000);
+		ByteBuffer data = ByteBuffer.allocate(AudioPreprocessor.WAV_HEADER_BYTES + samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+		data.put(AudioPreprocessor.wavHeader(samples * 2L));
+		for (int i = 0; i < samples; i++) {
+			double time = i / 16000.0;
+			boolean silent = false;
+			for (double pause : pauses) {
+				silent |= time >= pause && time < pause + 1;
+			}
+			data.putShort(silent ? 0 : (short) (8000 * Math.sin(2 * Math.PI * 440 * time)));
+		}
+		Path file = tempDir.resolve("input.wav");
+		Files.write(file, data.array());
+		return file.toFile();
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.echotype;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AudioPreprocessorTests {
+
+	private static final float RATE = 44100;
+
+	@TempDir
+	Path tempDir;
+
+	private AudioPreprocessor newPreprocessor(SimpleMeterRegistry registry) {
+		PipelineMetrics metrics = new PipelineMetrics();
+		ReflectionTestUtils.setField(metrics, "registry", registry);
+		AudioPreprocessor preprocessor = new AudioPreprocessor();
+		ReflectionTestUtils.setField(preprocessor, "metrics", metrics);
+		ReflectionTestUtils.setField(preprocessor, "enabled", true);
+		ReflectionTestUtils.setField(preprocessor, "frameMs", 30);
+		ReflectionTestUtils.setField(preprocessor, "minLevelDb", -50.0);
+		ReflectionTestUtils.setField(preprocessor, "marginDb", 12.0);
+		ReflectionTestUtils.setField(preprocessor, "paddingMs", 300);
+		ReflectionTestUtils.setField(preprocessor, "maxSilenceMs", 1000);
+		return preprocessor;
+	}
+
+	/** Stereo 16-bit WAV at 44.1 kHz; positive lengths are a 440 Hz tone, negative ones silence. */
+	private File wav(double... seconds) throws Exception {
+		int frames = 0;
+		for (double length : seconds) {
+			frames += (int) (Math.abs(length) * RATE);
+		}
+		ByteBuffer data = ByteBuffer.allocate(frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+		for (double length : seconds) {
+			for (int i = 0; i < (int) (Math.abs(length) * RATE); i++) {
+				short value = length > 0 ? (short) (8000 * Math.sin(2 * Math.PI * 440 * i / RATE)) : 0;
+				data.putShort(value).putShort(value);
+			}
+		}
+		AudioFormat format = new AudioFormat(RATE, 16, 2, true, false);
+		File file = tempDir.resolve("input.wav").toFile();
+		AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data.array()), format, frames),
+				AudioFileFormat.Type.WAVE, file);
+		return file;
+	}
+
+	@Test
+	void trimsSilenceAndResamplesToSixteenKilohertzMono() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		File input = wav(-3, 2, -4, 2, -3);
+
+		AudioPreprocessor.PreprocessedAudio result = newPreprocessor(registry).preprocess(input).orElseThrow();
+
+		AudioFormat format = AudioSystem.getAudioFileFormat(result.file()).getFormat();
+		assertThat(format.getSampleRate()).isEqualTo(16000f);
+		assertThat(format.getChannels()).isEqualTo(1);
+		assertThat(result.inputSeconds()).isCloseTo(14.0, within(0.01));
+		// 300 ms padding at either end, the 4 s pause cut to 1 s
+		assertThat(result.outputSeconds()).isCloseTo(5.6, within(0.1));
+		assertThat(registry.counter("echotype.audio.removed.seconds").count()).isCloseTo(8.4, within(0.1));
+		Files.delete(result.file().toPath());
+	}
+
+	@Test
+	void leavesUnsupportedFormatsAndSilenceAlone() throws Exception {
+		AudioPreprocessor preprocessor = newPreprocessor(new SimpleMeterRegistry());
+		Path mp3 = Files.write(tempDir.resolve("input.mp3"), new byte[] {'I', 'D', '3', 4, 0, 0, 0, 0, 0, 0});
+
+		Optional<AudioPreprocessor.PreprocessedAudio> unsupported = preprocessor.preprocess(mp3.toFile());
+		Optional<AudioPreprocessor.PreprocessedAudio> silent = preprocessor.preprocess(wav(-2));
+
+		assertThat(unsupported).isEmpty();
+		assertThat(silent).isEmpty();
+	}
+}
@@ -0,0 +1,163 @@
+package com.example.echotype;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FairSchedulerTests {
+
+	private FairScheduler newScheduler(int maxConcurrent, double burst) {
+		return newScheduler(maxConcurrent, burst, 16);
+	}
+
+	private FairScheduler newScheduler(int maxConcurrent, double burst, int transcribePoolSize) {
+		PipelineMetrics metrics = new PipelineMetrics();
+		ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+		FairScheduler scheduler = new FairScheduler();
+		ReflectionTestUtils.setField(scheduler, "metrics", metrics);
+		ReflectionTestUtils.setField(scheduler, "configuredMaxConcurrent", maxConcurrent);
+		ReflectionTestUtils.setField(scheduler, "transcribePoolSize", transcribePoolSize);
+		ReflectionTestUtils.setField(scheduler, "memoryPerTaskMb", 1024L);
+		ReflectionTestUtils.setField(scheduler, "ratePerMinute", 60.0);
+		ReflectionTestUtils.setField(scheduler, "burst", burst);
+		scheduler.init();
+		return scheduler;
+	}
+
+	@Test
+	void freedSlotGoesToTheUserWithFewestRunning() throws Exception {
+		FairScheduler scheduler = newScheduler(2, 10);
+		FairScheduler.Permit bulk1 = scheduler.acquire(1L, null);
+		FairScheduler.Permit bulk2 = scheduler.acquire(1L, null);
+		List<Long> order = new CopyOnWriteArrayList<>();
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		// User 1 queues three more before user 2 asks for one
+		long[] users = {1, 1, 1, 2};
+		for (int i = 0; i < users.length; i++) {
+			long userId = users[i];
+			executor.submit(() -> {
+				try (FairScheduler.Permit permit = scheduler.acquire(userId, null)) {
+					order.add(userId);
+					Thread.sleep(20);
+				}
+				return null;
+			});
+			while (scheduler.getQueued() < i + 1) {
+				Thread.sleep(1);
+			}
+		}
+
+		bulk1.close();
+		while (order.isEmpty()) {
+			Thread.sleep(1);
+		}
+		bulk2.close();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(order).containsExactly(2L, 1L, 1L, 1L);
+		assertThat(scheduler.getRunning()).isZero();
+	}
+
+	@Test
+	void rejectsOverRateAndAfterMaxWait() throws Exception {
+		FairScheduler scheduler = newScheduler(1, 2);
+		scheduler.admit(1L);
+		scheduler.admit(1L);
+
+		assertThatThrownBy(() -> scheduler.admit(1L)).isInstanceOf(SchedulerRejectedException.class);
+		scheduler.admit(2L);
+
+		try (FairScheduler.Permit permit = scheduler.acquire(1L, Duration.ofSeconds(1))) {
+			assertThatThrownBy(() -> scheduler.acquire(2L, Duration.ofMillis(50)))
+					.isInstanceOf(SchedulerRejectedException.class);
+			assertThat(scheduler.getQueued()).isZero();
+		}
+		assertThat(scheduler.getRunning()).isZero();
+	}
+
+	@Test
+	void admitsNoMoreThanTheTranscribePoolCanRun() throws Exception {
+		// Default max-concurrent with a single transcribe worker
+		FairScheduler scheduler = newScheduler(0, 10, 1);
+		Semaphore worker = new Semaphore(1);
+		List<Long> order = new CopyOnWriteArrayList<>();
+		List<Long> workerBusy = new CopyOnWriteArrayList<>();
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		FairScheduler.Permit first = scheduler.acquire(1L, null);
+		// User 1 queues four jobs, then user 2 queues two
+		long[] users = {1, 1, 1, 1, 2, 2};
+		for (int i = 0; i < users.length; i++) {
+			long userId = users[i];
+			executor.submit(() -> {
+				try (FairScheduler.Permit permit = scheduler.acquire(userId, null)) {
+					// Stands in for borrowing the only worker, which must never be taken
+					if (!worker.tryAcquire()) {
+						workerBusy.add(userId);
+						return null;
+					}
+					order.add(userId);
+					Thread.sleep(10);
+					worker.release();
+				}
+				return null;
+			});
+			while (scheduler.getQueued() < i + 1) {
+				Thread.sleep(1);
+			}
+		}
+
+		first.close();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(workerBusy).isEmpty();
+		assertThat(order).containsExactly(1L, 2L, 1L, 2L, 1L, 1L);
+		assertThat(scheduler.getRunning()).isZero();
+	}
+
+	@Test
+	void sparesASlotOnlyWhenNobodyIsWaiting() throws Exception {
+		FairScheduler scheduler = newScheduler(2, 10);
+		FairScheduler.Permit own = scheduler.acquire(1L, null);
+		FairScheduler.Permit extra = scheduler.tryAcquire(1L);
+		assertThat(extra).isNotNull();
+		assertThat(scheduler.tryAcquire(1L)).isNull();
+
+		CountDownLatch granted = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		executor.submit(() -> {
+			try (FairScheduler.Permit permit = scheduler.acquire(2L, null)) {
+				granted.countDown();
+				done.await();
+			}
+			return null;
+		});
+		while (scheduler.getQueued() < 1) {
+			Thread.sleep(1);
+		}
+		// The freed slot goes to user 2, not to another chunk of user 1
+		extra.close();
+		assertThat(granted.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(scheduler.tryAcquire(1L)).isNull();
+
+		done.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+		own.close();
+		assertThat(scheduler.getRunning()).isZero();
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.echotype;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultCacheTests {
+
+	@TempDir
+	Path tempDir;
+
+	private ResultCache newCache(long memoryMaxBytes, String diskDirectory) throws Exception {
+		ResultCache cache = new ResultCache();
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "memoryMaxBytes", memoryMaxBytes);
+		ReflectionTestUtils.setField(cache, "diskDirectory", diskDirectory);
+		ReflectionTestUtils.setField(cache, "diskMaxBytes", 1024L * 1024);
+		cache.init();
+		return cache;
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntryWhenMemoryIsFull() throws Exception {
+		ResultCache cache = newCache(600, "");
+		cache.put("notes", "a", "x".repeat(100));
+		cache.put("notes", "b", "x".repeat(100));
+		assertThat(cache.get("notes", "a")).isPresent();
+
+		cache.put("notes", "c", "x".repeat(100));
+
+		assertThat(cache.get("notes", "a")).isPresent();
+		assertThat(cache.get("notes", "b")).isEmpty();
+		assertThat(cache.get("notes", "c")).isPresent();
+		assertThat(cache.stats()).containsEntry("memoryHits", 3L).containsEntry("misses", 1L);
+	}
+
+	@Test
+	void diskTierSurvivesRestart() throws Exception {
+		ResultCache first = newCache(1024, tempDir.toString());
+		first.put("transcription", ContentHash.of("audio"), "hello world");
+
+		ResultCache second = newCache(1024, tempDir.toString());
+
+		assertThat(second.get("transcription", ContentHash.of("audio"))).contains("hello world");
+		assertThat(second.stats()).containsEntry("diskHits", 1L);
+	}
+
+	@Test
+	void leftoverTempFilesAreDeletedAtStartup() throws Exception {
+		Path namespace = Files.createDirectories(tempDir.resolve("transcription"));
+		Path leftover = Files.writeString(namespace.resolve("abc123.tmp"), "x".repeat(500));
+
+		ResultCache cache = newCache(1024, tempDir.toString());
+
+		assertThat(leftover).doesNotExist();
+		assertThat(cache.stats()).containsEntry("diskBytes", 0L);
+	}
+
+	@Test
+	void contentHashSeparatesParts() {
+		assertThat(ContentHash.of("ab", "c")).isNotEqualTo(ContentHash.of("a", "bc"));
+		assertThat(ContentHash.of("text", null, "id")).isEqualTo(ContentHash.of("text", "", "id"));
+	}
+
+}
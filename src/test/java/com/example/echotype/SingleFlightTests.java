@@ -0,0 +1,57 @@
+package com.example.echotype;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTests {
+
+	@Test
+	void concurrentCallersShareOneExecution() throws Exception {
+		AtomicInteger coalesced = new AtomicInteger();
+		AtomicInteger executions = new AtomicInteger();
+		SingleFlight<String> flight = new SingleFlight<>(coalesced::incrementAndGet);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+		Future<String> first = executor.submit(() -> flight.execute("key", () -> {
+			executions.incrementAndGet();
+			started.countDown();
+			release.await();
+			return "notes";
+		}));
+		started.await();
+		Future<String> second = executor.submit(() -> flight.execute("key", () -> "duplicate"));
+		while (coalesced.get() == 0) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+
+		assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("notes");
+		assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("notes");
+		assertThat(executions).hasValue(1);
+		assertThat(flight.size()).isZero();
+		assertThat(flight.execute("key", () -> "fresh")).isEqualTo("fresh");
+		executor.shutdown();
+	}
+
+	@Test
+	void failureIsSharedAndFreesTheKey() throws Exception {
+		SingleFlight<String> flight = new SingleFlight<>(() -> { });
+
+		assertThatThrownBy(() -> flight.execute("key", () -> {
+			throw new WorkerException("Gemini failed");
+		})).isInstanceOf(WorkerException.class);
+
+		assertThat(flight.execute("key", () -> "retried")).isEqualTo("retried");
+	}
+}
@@ -0,0 +1,44 @@
+package com.example.echotype;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingSessionTests {
+
+	// Records what is sent and keeps the completion callback, which only a servlet response would run
+	private static final class RecordingEmitter extends SseEmitter {
+		final List<SseEventBuilder> sent = new ArrayList<>();
+		Runnable completion;
+
+		@Override
+		public void send(SseEventBuilder builder) {
+			sent.add(builder);
+		}
+
+		@Override
+		public synchronized void onCompletion(Runnable callback) {
+			completion = callback;
+		}
+	}
+
+	@Test
+	void resubscribingSurvivesThePreviousStreamEnding() {
+		StreamingSession session = new StreamingSession("s1", 1L, "c1", null);
+		session.send("segment", "first");
+		RecordingEmitter first = new RecordingEmitter();
+		RecordingEmitter second = new RecordingEmitter();
+		session.attach(first);
+		session.attach(second);
+
+		first.completion.run();
+		session.send("segment", "second");
+
+		assertThat(second.sent).hasSize(2);
+		assertThat(first.sent).hasSize(1);
+	}
+}
@@ -0,0 +1,122 @@
+package com.example.echotype;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserListCacheTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	// Stored list versions by user, served in place of the version queries
+	private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+
+	private final JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+			return (T) versions.getOrDefault((Long) args[0], 0L);
+		}
+	};
+
+	private UserListCache newCache(int maxEntries) {
+		PipelineMetrics metrics = new PipelineMetrics();
+		ReflectionTestUtils.setField(metrics, "registry", registry);
+		UserListCache cache = new UserListCache();
+		ReflectionTestUtils.setField(cache, "metrics", metrics);
+		ReflectionTestUtils.setField(cache, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(cache, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+		ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+		ReflectionTestUtils.setField(cache, "notifyChannel", "");
+		return cache;
+	}
+
+	@Test
+	void servesFromCacheUntilTheUserIsInvalidated() {
+		UserListCache cache = newCache(10);
+		AtomicInteger loads = new AtomicInteger();
+
+		assertThat(cache.get(UserListCache.NOTES, 1L, () -> List.of("a" + loads.incrementAndGet()))).containsExactly("a1");
+		assertThat(cache.get(UserListCache.NOTES, 1L, () -> List.of("a" + loads.incrementAndGet()))).containsExactly("a1");
+		cache.get(UserListCache.NOTES, 2L, () -> List.of("b"));
+
+		cache.invalidate(UserListCache.NOTES, List.of(1L));
+		assertThat(cache.get(UserListCache.NOTES, 1L, () -> List.of("a" + loads.incrementAndGet()))).containsExactly("a2");
+		assertThat(cache.get(UserListCache.NOTES, 2L, () -> List.of("stale"))).containsExactly("b");
+		assertThat(registry.get("echotype.cache.lists").tag("result", "hit").counter().count()).isEqualTo(2);
+	}
+
+	@Test
+	void doesNotStoreAListLoadedAcrossAnInvalidation() {
+		UserListCache cache = newCache(10);
+
+		cache.get(UserListCache.CONVERSATIONS, 1L, () -> {
+			cache.invalidate(UserListCache.CONVERSATIONS, List.of(1L));
+			return List.of("old");
+		});
+
+		assertThat(cache.size()).isZero();
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedBeyondMaxEntries() {
+		UserListCache cache = newCache(2);
+		cache.get(UserListCache.NOTES, 1L, () -> List.of("a"));
+		cache.get(UserListCache.NOTES, 2L, () -> List.of("b"));
+		cache.get(UserListCache.NOTES, 1L, () -> List.of("a"));
+		cache.get(UserListCache.NOTES, 3L, () -> List.of("c"));
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get(UserListCache.NOTES, 2L, () -> List.of("reloaded"))).containsExactly("reloaded");
+	}
+
+	@Test
+	void answersNotModifiedFromTheStoredVersionWithoutTheCachedList() {
+		UserListCache cache = newCache(10);
+		versions.put(1L, 7L);
+		String etag = cache.lookup(UserListCache.NOTES, 1L, () -> List.of("a")).etag();
+		cache.clear();
+
+		assertThat(cache.notModified(UserListCache.NOTES, 1L, etag)).isEqualTo(etag);
+		assertThat(cache.notModified(UserListCache.CONVERSATIONS, 1L, etag)).isNull();
+
+		versions.put(1L, 8L);
+		assertThat(cache.notModified(UserListCache.NOTES, 1L, etag)).isNull();
+	}
+
+	@Test
+	void notesTagNeverGoesBackAfterATombstoneIsPurged() {
+		JdbcTemplate h2 = new JdbcTemplate(new DriverManagerDataSource(
+				"jdbc:h2:mem:list-cache-versions;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", ""));
+		h2.execute("CREATE TABLE note (id VARCHAR PRIMARY KEY, user_id BIGINT, sync_version BIGINT, is_deleted BOOLEAN)");
+		h2.execute("CREATE TABLE note_purge (user_id BIGINT PRIMARY KEY, purged_through BIGINT NOT NULL)");
+		UserListCache cache = newCache(10);
+		ReflectionTestUtils.setField(cache, "jdbcTemplate", h2);
+
+		h2.update("INSERT INTO note VALUES ('a', 1, 5, false), ('b', 1, 6, false)");
+		String seen = cache.lookup(UserListCache.NOTES, 1L, () -> List.of("a", "b")).etag();
+		assertThat(seen).isEqualTo("W/\"notes-6\"");
+
+		// Deleting A leaves a tombstone at version 7, which compaction later purges
+		h2.update("UPDATE note SET sync_version = 7, is_deleted = true WHERE id = 'a'");
+		h2.update("DELETE FROM note WHERE id = 'a'");
+		h2.update("INSERT INTO note_purge VALUES (1, 7)");
+		cache.invalidate(UserListCache.NOTES, List.of(1L));
+
+		assertThat(cache.notModified(UserListCache.NOTES, 1L, seen)).isNull();
+		assertThat(cache.lookup(UserListCache.NOTES, 1L, () -> List.of("b")).etag()).isEqualTo("W/\"notes-7\"");
+		assertThat(cache.notModified(UserListCache.NOTES, 2L, "W/\"notes-0\"")).isEqualTo("W/\"notes-0\"");
+	}
+}